@@ -0,0 +1,103 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import mdp_solver.ActionSpace;
+import mdp_solver.MCTS;
+import mdp_solver.MDPSolver;
+import mdp_solver.Node;
+import mdp_solver.OwnSimulator;
+import mdp_solver.SearchConfig;
+import problem.ProblemSpec;
+
+/**
+ * A problem loaded from one of the input_lvl files in the repository root, with a pool of states to run
+ * the benchmarks from. The pool comes from walking the rollout heuristic from the start state with a fixed
+ * seed, so it holds the states a search actually meets, at different positions and times.
+ *
+ * The directory of the input files is the system property "fixtures", ".." by default, which is the
+ * repository root when the benchmarks are started from the benchmarks directory.
+ */
+@State(Scope.Thread)
+public class Fixture {
+
+	/** Number of states in the pool, a power of two **/
+	public static final int POOL_SIZE = 1024;
+	private static final long SEED = 3702;
+
+	@Param({"input_lvl1.txt", "input_lvl2.txt", "input_lvl3.txt", "input_lvl4.txt"})
+	public String input;
+
+	public ProblemSpec ps;
+	public MDPSolver mdp;
+	public ActionSpace actionSpace;
+	public OwnSimulator ownSim;
+	/** A search that is only used for its rollout heuristic and its expansion, it is never run **/
+	public MCTS mcts;
+	/** Detached nodes with the time they were reached at **/
+	public Node[] nodes;
+	public long[] states;
+	private int next;
+
+	@Setup
+	public void load() throws IOException {
+		File inputFile = new File(System.getProperty("fixtures", ".."), input);
+		ps = new ProblemSpec(inputFile.getPath());
+		SearchConfig config = new SearchConfig();
+		config.setVerbose(false);
+		File outputFile = File.createTempFile("benchmark", ".txt");
+		outputFile.deleteOnExit();
+		mdp = new MDPSolver(ps, outputFile.getPath(), config);
+		actionSpace = mdp.getActionSpace();
+		ownSim = new OwnSimulator(ps, mdp, new Random(SEED));
+		mcts = newSearch();
+
+		nodes = new Node[POOL_SIZE];
+		states = new long[POOL_SIZE];
+		Node start = newRoot();
+		Node node = start;
+		for(int i = 0; i < POOL_SIZE; i++) {
+			if(node.getTimeUnits() >= ps.getMaxT() || ownSim.isGoalNode(node)) {
+				node = start;
+			}
+			nodes[i] = detach(node);
+			states[i] = node.getPackedState();
+			node = detach(ownSim.step(mcts.rolloutHeuristic(node), node));
+		}
+	}
+
+	/**
+	 * A new search over an empty tree
+	 */
+	public MCTS newSearch() {
+		return new MCTS(ps, actionSpace, mdp, newRoot(), ownSim);
+	}
+
+	private Node newRoot() {
+		return new Node(simulator.State.getStartState(ps.getFirstCarType(), ps.getFirstDriver(), ps.getFirstTireModel()),
+				null, null, mdp, false, null);
+	}
+
+	//A COPY WITHOUT THE PARENT, SO THE POOL DOES NOT KEEP THE WALK ALIVE
+	private Node detach(Node node) {
+		Node copy = new Node(node.getPackedState(), null, node.getAction(), mdp, false, null);
+		copy.setTimeUnits(node.getTimeUnits());
+		return copy;
+	}
+
+	/**
+	 * The next index into the pool, going round it
+	 */
+	public int nextIndex() {
+		next = (next + 1) & (POOL_SIZE - 1);
+		return next;
+	}
+
+}
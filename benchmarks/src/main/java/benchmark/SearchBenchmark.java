@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mdp_solver.MCTS;
+import mdp_solver.Node;
+import problem.Action;
+
+/**
+ * The parts of MCTS every iteration goes through: choosing a rollout action, a whole rollout and expanding a leaf.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Benchmark
+	public Action rolloutHeuristic(Fixture fixture) {
+		return fixture.mcts.rolloutHeuristic(fixture.nodes[fixture.nextIndex()]);
+	}
+
+	/**
+	 * One rollout from a pool state to the goal or maxT, the way MCTS runs it from a new leaf
+	 */
+	@Benchmark
+	public double rollout(Fixture fixture) {
+		return fixture.mcts.simulate(fixture.nodes[fixture.nextIndex()]);
+	}
+
+	/**
+	 * Expands a fresh copy of every pool state in an empty tree. A node is only ever expanded once, so the
+	 * tree is thrown away after each pass over the pool instead of growing for the whole run.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Fixture.POOL_SIZE)
+	public void expand(Fixture fixture, Blackhole blackhole) {
+		MCTS search = fixture.newSearch();
+		for(Node node : fixture.nodes) {
+			Node leaf = new Node(node.getPackedState(), null, node.getAction(), fixture.mdp, false, null);
+			leaf.setTimeUnits(node.getTimeUnits());
+			blackhole.consume(search.expand(leaf));
+		}
+	}
+
+}
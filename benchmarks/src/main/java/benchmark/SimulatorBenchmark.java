@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import problem.Action;
+import problem.ActionType;
+
+/**
+ * OwnSimulator on its own: a step of each type of action and the move distribution of a state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark {
+
+	/**
+	 * One action of the given type, on a problem of its own. Only level 4 has every type, so it is the only
+	 * input by default; another level can be picked with -p input=... together with the types it offers.
+	 */
+	@State(Scope.Thread)
+	public static class StepAction {
+
+		@Param({"input_lvl4.txt"})
+		public String input;
+
+		@Param({"MOVE", "CHANGE_CAR", "CHANGE_DRIVER", "CHANGE_TIRES", "ADD_FUEL", "CHANGE_PRESSURE", "CHANGE_CAR_AND_DRIVER"})
+		public ActionType actionType;
+
+		public Fixture fixture;
+		public Action action;
+
+		@Setup
+		public void find() throws IOException {
+			fixture = new Fixture();
+			fixture.input = input;
+			fixture.load();
+			for(Action a : fixture.actionSpace) {
+				if(a.getActionType() == actionType) {
+					action = a;
+					return;
+				}
+			}
+			throw new IllegalStateException(input + " has no action of type " + actionType);
+		}
+	}
+
+	@Benchmark
+	public long step(StepAction stepAction) {
+		Fixture fixture = stepAction.fixture;
+		return fixture.ownSim.step(stepAction.action, fixture.states[fixture.nextIndex()]);
+	}
+
+	@Benchmark
+	public double[] getMoveProbs(Fixture fixture) {
+		return fixture.ownSim.getMoveProbs(fixture.states[fixture.nextIndex()]);
+	}
+
+}
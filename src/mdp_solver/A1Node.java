@@ -1,54 +1,152 @@
 package mdp_solver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import problem.Action;
+import problem.ProblemSpec;
 import simulator.State;
 
+/**
+ * The chance node of CONTINUE_MOVING. Its outcome nodes are only created the first time they are asked
+ * for, with the cells they end in looked up in ProblemSpec.getMoveSuccessors(). Outcomes that cannot
+ * happen are left out and outcomes that end in the same state are merged into one with their summed
+ * probability, so near the start and the goal of the track there are fewer outcomes than moves.
+ *
+ * The search goes through the node to one outcome per visit, sampled with the move probabilities (see
+ * getOutcomeOfMove). The value of the node is the expectation over the outcomes visited so far, each
+ * outcome's average weighted by its probability, and its visits are the visits of its outcomes.
+ */
 public class A1Node extends Node {
 	
 	List<Node> outcomeNodes = new ArrayList<>();
 	
-	double[] moveProbs;
+	/** The probability and the time of each outcome node, in the same order **/
+	double[] outcomeProbs;
+	int[] outcomeDurations;
+	/** The outcome node each move index ends in, -1 for the moves that cannot happen **/
+	byte[] moveOutcomes;
+	
+	private int probabilityOffset;
+	private int fuelRequired;
+	private NodePool pool; //null WHEN THE OUTCOMES ARE CREATED WITH new
+	private volatile boolean outcomesGenerated;
 
-	public A1Node(State nodeState, Node parentNode, Action action, MDPSolver mdp, double[] moveProbs) {
-		super(nodeState, parentNode, action, mdp, false, null);
-		generateOutcomeNodes();
-		this.moveProbs = moveProbs;
+	/**
+	 * @param probabilityOffset where the move probabilities of the state start in ProblemSpec.getMoveProbabilities()
+	 */
+	public A1Node(long state, Node parentNode, Action action, MDPSolver mdp, int probabilityOffset, int fuelRequired) {
+		super(state, parentNode, action, mdp, false, null);
+		this.probabilityOffset = probabilityOffset;
+		this.fuelRequired = fuelRequired;
 	}
 	
-	public void updateA1Node() {
-		updateValue();
-		updateA1Visits();
-		updateUCB();
+	/**
+	 * An empty node for a NodePool, without outcomes until it is initialised
+	 */
+	A1Node(MDPSolver mdp) {
+		super(0, null, null, mdp, false, null);
 	}
 	
-	private void updateA1Visits() {
-		double visits = 0;
-		for(int i = 0; i < outcomeNodes.size(); i++) {
-			visits += outcomeNodes.get(i).getTotVisits() * moveProbs[i];
-		}
-		this.totVisits = (int) visits;
+	/**
+	 * Sets the node up the way the constructor does, its outcome nodes will be taken from the pool
+	 */
+	void initA1(long state, Node parentNode, Action action, MDPSolver mdp, int probabilityOffset, int fuelRequired, NodePool pool) {
+		init(state, parentNode, action, mdp, false, null);
+		this.probabilityOffset = probabilityOffset;
+		this.fuelRequired = fuelRequired;
+		this.pool = pool;
+		outcomeNodes.clear();
+		outcomesGenerated = false;
 	}
-
-	public double updateValue() {
-		double value = 0;
+	
+	/**
+	 * Makes the node a copy of other without its outcomes. When other has outcomes the caller copies and
+	 * adds them with addOutcome, otherwise they are created from the pool when they are first needed.
+	 */
+	void copyA1(A1Node other, Node parentNode, int shift, NodePool pool) {
+		copy(other, parentNode, null, shift);
+		outcomeNodes.clear();
+		outcomeProbs = other.outcomeProbs;
+		outcomeDurations = other.outcomeDurations;
+		moveOutcomes = other.moveOutcomes;
+		probabilityOffset = other.probabilityOffset;
+		fuelRequired = other.fuelRequired;
+		this.pool = pool;
+		outcomesGenerated = other.outcomesGenerated;
+	}
+	
+	void addOutcome(Node outcome) {
+		outcomeNodes.add(outcome);
+	}
+	
+	/**
+	 * Sets the value and the visits from the outcome nodes. An outcome that has not been visited yet is
+	 * left out of the expectation and the probabilities of the others are scaled up to make up for it.
+	 */
+	public void updateA1Node() {
+		int visits = 0;
+		double expectation = 0;
+		double visitedProbability = 0;
 		for(int i = 0; i < outcomeNodes.size(); i++) {
-			value += outcomeNodes.get(i).getValue() * moveProbs[i];
+			Node outcome = outcomeNodes.get(i);
+			int outcomeVisits = outcome.getTotVisits();
+			if(outcomeVisits > 0) {
+				visits += outcomeVisits;
+				expectation += outcomeProbs[i] * outcome.getValue() / outcomeVisits;
+				visitedProbability += outcomeProbs[i];
+			}
 		}
-		this.value = value;
-		return this.value;
+		this.totVisits = visits;
+		storeValue((visitedProbability > 0) ? visits * expectation / visitedProbability : 0); //THE SUM THAT GIVES THE EXPECTATION AS AVERAGE
+		updateUCB();
 	}
 	
-	public double[] getMoveProbs() {
-		return moveProbs;
+	public double getOutcomeProbability(int outcomeIndex) {
+		return outcomeProbs[outcomeIndex];
 	}
 	
+	/**
+	 * The outcome nodes, created on the first call
+	 */
 	public List<Node> getOutcomeNodes(){
+		if(!outcomesGenerated) {
+			generateOutcomeNodes();
+		}
 		return outcomeNodes;
 	}
 	
+	/**
+	 * The outcome node a move ends in
+	 * 
+	 * @param moveIndex the index of the move in the move probability table, as OwnSimulator.sampleMoveIndex gives it
+	 * @throws IllegalStateException when the move has probability 0, which the sampling never gives
+	 */
+	public Node getOutcomeOfMove(int moveIndex) {
+		List<Node> outcomes = getOutcomeNodes();
+		int outcome = moveOutcomes[moveIndex];
+		if(outcome < 0) {
+			throw new IllegalStateException("Move " + moveIndex + " was sampled but has probability 0");
+		}
+		return outcomes.get(outcome);
+	}
+	
+	/**
+	 * Whether the outcome nodes have been created, without creating them
+	 */
+	public boolean hasOutcomeNodes() {
+		return outcomesGenerated;
+	}
+	
+	/**
+	 * The number of time steps the real simulator spends on the given outcome, see OwnSimulator.getMoveDuration.
+	 * The outcome node is at the time of this node plus the duration.
+	 */
+	public int getOutcomeDuration(int outcomeIndex) {
+		return outcomeDurations[outcomeIndex];
+	}
+	
 	
 	@Override
 	public State getNodeState() {
@@ -56,21 +154,68 @@ public class A1Node extends Node {
 		return null;
 	}
 	
-	private void generateOutcomeNodes() {
-		for(int i = -4; i < 6; i++) {
-			State dummyState = nodeState;
-			State subNodeState = dummyState.changePosition(i, mdp.getProblemSpec().getN());
-			outcomeNodes.add(new Node(subNodeState, parentNode, action, mdp, true, this));
+	//SEVERAL SEARCH THREADS CAN REACH THE NODE AT ONCE, ONLY ONE CREATES THE OUTCOMES
+	private synchronized void generateOutcomeNodes() {
+		if(outcomesGenerated) {
+			return;
+		}
+		ProblemSpec ps = mdp.getProblemSpec();
+		//THE MOVE USES FUEL FROM LEVEL 2 AND UP, SAME AS IN THE SIMULATOR. WITHOUT IT THE OUTCOMES NEVER MATCH THE REAL NEXT STATE.
+		long movedState = state;
+		if(ps.getLevel().getLevelNumber() > 1 && fuelRequired <= PackedState.getFuel(movedState)) {
+			movedState = PackedState.consumeFuel(movedState, fuelRequired);
+		}
+		double[] moveProbabilities = ps.getMoveProbabilities();
+		int[] successors = ps.getMoveSuccessors();
+		int row = PackedState.getPos(movedState) * ProblemSpec.CAR_MOVE_RANGE;
+		int slipIndex = ps.getIndexOfMove(ProblemSpec.SLIP);
+		int breakdownIndex = ps.getIndexOfMove(ProblemSpec.BREAKDOWN);
+		long[] states = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probs = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int[] durations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		byte[] outcomeOfMove = new byte[ProblemSpec.CAR_MOVE_RANGE];
+		int count = 0;
+		for(int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+			double p = moveProbabilities[probabilityOffset + k];
+			outcomeOfMove[k] = -1;
+			if(p == 0) {
+				continue;
+			}
+			//SLIP AND BREAKDOWN KEEP THEIR FLAG, THE OUTCOME NODE TURNS IT INTO TIME
+			long outcomeState = PackedState.changePositionTo(movedState, successors[row + k]);
+			if(k == slipIndex) {
+				outcomeState = PackedState.changeSlipCondition(outcomeState, true);
+			}
+			else if(k == breakdownIndex) {
+				outcomeState = PackedState.changeBreakdownCondition(outcomeState, true);
+			}
+			int same = 0;
+			while(same < count && states[same] != outcomeState) {
+				same++;
+			}
+			outcomeOfMove[k] = (byte) same;
+			if(same < count) {
+				probs[same] += p;
+				continue;
+			}
+			states[count] = outcomeState;
+			probs[count] = p;
+			durations[count++] = OwnSimulator.getMoveDuration(ps, ps.convertIndexIntoMove(k));
+		}
+		for(int i = 0; i < count; i++) {
+			outcomeNodes.add(newOutcome(states[i]));
+		}
+		outcomeProbs = Arrays.copyOf(probs, count);
+		outcomeDurations = Arrays.copyOf(durations, count);
+		moveOutcomes = outcomeOfMove;
+		outcomesGenerated = true;
+	}
+	
+	private Node newOutcome(long outcomeState) {
+		if(pool == null) {
+			return new Node(outcomeState, parentNode, action, mdp, true, this);
 		}
-		State slipState = nodeState;
-		State breakState = nodeState;
-		
-		slipState = slipState.changeSlipCondition(true);
-		breakState = breakState.changeBreakdownCondition(true);
-		
-		outcomeNodes.add(new Node(slipState, parentNode, action, mdp, true, this));
-		outcomeNodes.add(new Node(breakState, parentNode, action, mdp, true, this));
-		
+		return pool.obtain(outcomeState, parentNode, action, true, this);
 	}
 	
 	
@@ -0,0 +1,198 @@
+package mdp_solver;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import problem.Action;
+import problem.ActionType;
+import problem.ProblemSpec;
+import problem.TirePressure;
+
+/**
+ * The actions of a level by index, in the order of MDPSolver.generateActionSpace: A1, the car changes,
+ * the driver changes, the tire changes and from level 2 the fuel and pressure changes, then from level 4
+ * the car and driver changes.
+ *
+ * It is a list of the Action objects, and next to them it keeps what the search needs to know about each
+ * action as plain ints: its type, its duration and the car, driver, tire, fuel or pressure it sets. With
+ * those an action other than A1 is applied to a packed state, or found to leave it as it is, in O(1)
+ * without looking at any strings.
+ */
+public class ActionSpace extends AbstractList<Action> implements RandomAccess {
+
+	/** A1 is always first **/
+	public static final int MOVE = 0;
+
+	private static final int FULL_PRESSURE = TirePressure.ONE_HUNDRED_PERCENT.ordinal();
+
+	private final Action[] actions;
+	private final ActionType[] types;
+	private final int[] durations;
+	/** The car, driver, tire, fuel or pressure the action sets, for A7 the car **/
+	private final int[] targets;
+	/** The driver of an A7 **/
+	private final int[] drivers;
+	/** Where the actions of each type start and end, by ActionType ordinal. Types the level does not have are empty, at the end. **/
+	private final int[] firstIndex;
+	private final int[] endIndex;
+	private final Map<Action, Integer> indices;
+
+	public ActionSpace(ProblemSpec ps, List<Action> actionList) {
+		int size = actionList.size();
+		actions = actionList.toArray(new Action[size]);
+		types = new ActionType[size];
+		durations = new int[size];
+		targets = new int[size];
+		drivers = new int[size];
+		firstIndex = new int[ActionType.values().length];
+		endIndex = new int[ActionType.values().length];
+		Arrays.fill(firstIndex, size);
+		Arrays.fill(endIndex, size);
+		indices = new IdentityHashMap<>();
+		for(int a = 0; a < size; a++) {
+			Action action = actions[a];
+			ActionType type = action.getActionType();
+			types[a] = type;
+			durations[a] = 1;
+			switch(type) {
+				case CHANGE_CAR:
+					targets[a] = ps.getCarIndex(action.getCarType());
+					break;
+				case CHANGE_DRIVER:
+					targets[a] = ps.getDriverIndex(action.getDriverType());
+					break;
+				case CHANGE_TIRES:
+					targets[a] = action.getTireModel().ordinal();
+					break;
+				case ADD_FUEL:
+					targets[a] = action.getFuel();
+					durations[a] = (int) Math.ceil(action.getFuel() / (float) 10); //THE SAME AS OwnSimulator.getDuration
+					break;
+				case CHANGE_PRESSURE:
+					targets[a] = action.getTirePressure().ordinal();
+					break;
+				case CHANGE_CAR_AND_DRIVER:
+					targets[a] = ps.getCarIndex(action.getCarType());
+					drivers[a] = ps.getDriverIndex(action.getDriverType());
+					break;
+				default:
+					break;
+			}
+			if(a == 0 || types[a - 1] != type) {
+				firstIndex[type.ordinal()] = a;
+			}
+			endIndex[type.ordinal()] = a + 1;
+			indices.put(action, a);
+		}
+		if(size == 0 || types[MOVE] != ActionType.MOVE) {
+			throw new IllegalArgumentException("The action space must start with CONTINUE_MOVING");
+		}
+	}
+
+	@Override
+	public Action get(int index) {
+		return actions[index];
+	}
+
+	@Override
+	public int size() {
+		return actions.length;
+	}
+
+	/**
+	 * @return the index of an action of this space, or -1 for null or any other action
+	 */
+	public int getIndex(Action action) {
+		Integer index = (action == null) ? null : indices.get(action);
+		return (index == null) ? -1 : index;
+	}
+
+	public ActionType getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * The number of time steps the action takes, 1 for A1 whose real time depends on the outcome
+	 */
+	public int getDuration(int index) {
+		return durations[index];
+	}
+
+	/**
+	 * The first index of the actions of a type, the actions of a type come one after the other
+	 */
+	public int getFirstIndex(ActionType type) {
+		return firstIndex[type.ordinal()];
+	}
+
+	/**
+	 * One past the last index of the actions of a type, the same as getFirstIndex when the level does not have them
+	 */
+	public int getEndIndex(ActionType type) {
+		return endIndex[type.ordinal()];
+	}
+
+	/**
+	 * @return the index of the action that adds fuel, or -1 on level 1
+	 */
+	public int getFuelIndex() {
+		int first = getFirstIndex(ActionType.ADD_FUEL);
+		return (first < getEndIndex(ActionType.ADD_FUEL)) ? first : -1;
+	}
+
+	/**
+	 * Whether an action leaves a state exactly as it is, the same as step(index, state) == state. A1 never
+	 * does, it is searched as a chance node even when there is not enough fuel to move.
+	 */
+	public boolean isNoOp(int index, long state) {
+		switch(types[index]) {
+			case CHANGE_CAR:
+				return PackedState.getCar(state) == targets[index];
+			case CHANGE_DRIVER:
+				return PackedState.getDriver(state) == targets[index];
+			case CHANGE_TIRES:
+				return PackedState.getTire(state) == targets[index] && PackedState.getPressure(state) == FULL_PRESSURE;
+			case ADD_FUEL:
+				return targets[index] == 0 || PackedState.getFuel(state) >= ProblemSpec.FUEL_MAX;
+			case CHANGE_PRESSURE:
+				return PackedState.getPressure(state) == targets[index];
+			case CHANGE_CAR_AND_DRIVER:
+				return PackedState.getCar(state) == targets[index] && PackedState.getDriver(state) == drivers[index];
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Performs an action other than A1 on a packed state, with the same result as OwnSimulator.step
+	 *
+	 * @throws IllegalArgumentException for A1, whose outcome is sampled by OwnSimulator
+	 */
+	public long step(int index, long state) {
+		switch(types[index]) {
+			case CHANGE_CAR:
+				//CHANGING TO THE SAME CAR DOES NOT FILL THE TANK
+				return (PackedState.getCar(state) == targets[index]) ? state : PackedState.changeCarType(state, targets[index]);
+			case CHANGE_DRIVER:
+				return PackedState.changeDriver(state, targets[index]);
+			case CHANGE_TIRES:
+				return PackedState.changeTires(state, targets[index]);
+			case ADD_FUEL:
+				return PackedState.addFuel(state, targets[index]);
+			case CHANGE_PRESSURE:
+				return PackedState.changeTirePressure(state, targets[index]);
+			case CHANGE_CAR_AND_DRIVER:
+				if(PackedState.getCar(state) == targets[index]) {
+					return PackedState.changeDriver(state, drivers[index]);
+				}
+				return PackedState.changeCarAndDriver(state, targets[index], drivers[index]);
+			default:
+				throw new IllegalArgumentException("Only OwnSimulator can perform " + actions[index].getText());
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package mdp_solver;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Alias tables (Vose's method) for a flat array of discrete distributions, so an outcome can be
+ * sampled in constant time: one random number picks a column and a coin flip against the column's
+ * probability decides between the column and its alias.
+ *
+ * The tables are read only once built and can be shared by all searching threads.
+ */
+public class AliasTable {
+
+	/** Number of outcomes in every distribution **/
+	private final int width;
+	/** Probability of keeping the column, width entries per distribution **/
+	private final double[] probability;
+	/** Outcome used instead of the column, width entries per distribution **/
+	private final int[] alias;
+
+	/**
+	 * Build the alias tables for the distributions
+	 *
+	 * @param distributions the distributions one after the other, width entries each, every one summing to 1
+	 * @param width the number of outcomes in each distribution
+	 */
+	public AliasTable(double[] distributions, int width) {
+		this.width = width;
+		probability = new double[distributions.length];
+		alias = new int[distributions.length];
+
+		double[] scaled = new double[width];
+		int[] small = new int[width];
+		int[] large = new int[width];
+		for(int offset = 0; offset < distributions.length; offset += width) {
+			int smallCount = 0;
+			int largeCount = 0;
+			for(int i = 0; i < width; i++) {
+				scaled[i] = distributions[offset + i] * width;
+				if(scaled[i] < 1.0) {
+					small[smallCount++] = i;
+				} else {
+					large[largeCount++] = i;
+				}
+			}
+			while(smallCount > 0 && largeCount > 0) {
+				int less = small[--smallCount];
+				int more = large[--largeCount];
+				probability[offset + less] = scaled[less];
+				alias[offset + less] = more;
+				scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+				if(scaled[more] < 1.0) {
+					small[smallCount++] = more;
+				} else {
+					large[largeCount++] = more;
+				}
+			}
+			//WHAT IS LEFT IS 1 UP TO ROUNDING ERRORS
+			while(largeCount > 0) {
+				int more = large[--largeCount];
+				probability[offset + more] = 1.0;
+				alias[offset + more] = more;
+			}
+			while(smallCount > 0) {
+				int less = small[--smallCount];
+				probability[offset + less] = 1.0;
+				alias[offset + less] = less;
+			}
+		}
+	}
+
+	/**
+	 * Sample an outcome of a distribution
+	 *
+	 * @param offset where the distribution starts, the same offset as in the array the table was built from
+	 * @param random the random source, or null to use the ThreadLocalRandom of the calling thread
+	 * @return the index of the outcome within the distribution, 0 to width-1
+	 */
+	public int sample(int offset, Random random) {
+		double u = ((random == null) ? ThreadLocalRandom.current().nextDouble() : random.nextDouble()) * width;
+		int column = (int) u;
+		if(u - column < probability[offset + column]) {
+			return column;
+		}
+		return alias[offset + column];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+}
@@ -0,0 +1,262 @@
+package mdp_solver;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import problem.ProblemSpec;
+
+/**
+ * Solves many problem files at once, for trying the solver on a whole set of inputs.
+ *
+ * Usage: BatchSolver [--overwrite] [--output-dir=<directory>] <directory|glob> [parallel solves] [mode]
+ *                    [time per decision in ms] [metrics file]
+ *
+ * A directory is searched for input*.txt files, a glob like "examples/**.txt" is matched from the part of it
+ * that has no wildcards. The files are solved on a fixed pool of threads, one solve per thread, and each
+ * output is written under the output directory, "solutions" by default (see getOutputFile). An output file
+ * that is already there is left alone and its input counts as failed, unless --overwrite is given. Every
+ * solve gets its own MDPSolver and simulator, the SearchConfig is shared and only read.
+ */
+public class BatchSolver {
+
+	private static final String INPUT_PREFIX = "input";
+	private static final String OUTPUT_PREFIX = "output";
+	public static final String DEFAULT_OUTPUT_DIRECTORY = "solutions";
+	public static final String OVERWRITE_OPTION = "--overwrite";
+	private static final String OUTPUT_DIRECTORY_OPTION = "--output-dir=";
+
+	/** The result of solving one file **/
+	private static class Result {
+		private final Path input;
+		private final boolean goalReached;
+		private final long millis;
+		private final Exception error;
+
+		private Result(Path input, boolean goalReached, long millis, Exception error) {
+			this.input = input;
+			this.goalReached = goalReached;
+			this.millis = millis;
+			this.error = error;
+		}
+	}
+
+	private final SearchConfig config;
+	private final int parallelSolves;
+	private final Path outputDirectory;
+	private final boolean overwrite;
+
+	public BatchSolver(SearchConfig config, int parallelSolves) {
+		this(config, parallelSolves, Paths.get(DEFAULT_OUTPUT_DIRECTORY), false);
+	}
+
+	/**
+	 * @param config the settings of every solve, which should not be verbose since the solves print at the same time
+	 * @param parallelSolves number of files solved at the same time
+	 * @param outputDirectory where the outputs go, see getOutputFile
+	 * @param overwrite whether an output file that is already there may be replaced
+	 */
+	public BatchSolver(SearchConfig config, int parallelSolves, Path outputDirectory, boolean overwrite) {
+		if(parallelSolves < 1) {
+			throw new IllegalArgumentException("Number of parallel solves must be at least 1");
+		}
+		this.config = config;
+		this.parallelSolves = parallelSolves;
+		this.outputDirectory = outputDirectory;
+		this.overwrite = overwrite;
+	}
+
+	/**
+	 * Solves all the files and prints a line for each of them, followed by a summary
+	 *
+	 * @return the number of files where the goal was reached
+	 */
+	public int run(List<Path> inputs) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelSolves);
+		long startTime = System.currentTimeMillis();
+		int solved = 0;
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for(Path input : inputs) {
+				futures.add(executor.submit(() -> solve(input)));
+			}
+			for(Future<Result> future : futures) {
+				Result result;
+				try {
+					result = future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("A solve failed outside of its own error handling", e.getCause());
+				}
+				if(result.error != null) {
+					System.out.println(result.input + ": failed, " + result.error);
+				}
+				else {
+					System.out.println(result.input + ": " + (result.goalReached ? "goal reached" : "goal not reached") + " in " + result.millis + " ms");
+				}
+				if(result.goalReached) {
+					solved++;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		long totalMillis = System.currentTimeMillis() - startTime;
+		double successRate = inputs.isEmpty() ? 0 : 100.0 * solved / inputs.size();
+		double filesPerMinute = 60000.0 * inputs.size() / Math.max(1, totalMillis);
+		System.out.println(String.format("Solved %d of %d files (%.1f %%) in %d ms with %d parallel solves, %.2f files per minute",
+				solved, inputs.size(), successRate, totalMillis, parallelSolves, filesPerMinute));
+		return solved;
+	}
+
+	//A FILE THAT CAN NOT BE READ OR SOLVED ONLY FAILS ITSELF, THE ERROR IS REPORTED FOR IT AND THE OTHERS GO ON
+	private Result solve(Path input) {
+		long startTime = System.currentTimeMillis();
+		try {
+			Path output = prepareOutputFile(getOutputFile(input, outputDirectory), overwrite);
+			ProblemSpec ps = new ProblemSpec(input.toString());
+			MDPSolver solver = new MDPSolver(ps, output.toString(), config);
+			boolean goalReached = solver.solve();
+			return new Result(input, goalReached, System.currentTimeMillis() - startTime, null);
+		} catch (Exception e) {
+			return new Result(input, false, System.currentTimeMillis() - startTime, e);
+		}
+	}
+
+	/**
+	 * The file the solution of an input is written to. The directory of the input is repeated under the output
+	 * directory, relative to the working directory when the input is below it, so inputs with the same name
+	 * in different directories do not share an output. input_lvl1.txt gives output_lvl1.txt and any other
+	 * name gets "output_" in front of it: examples/level_1/input_lvl1.txt goes to
+	 * solutions/examples/level_1/output_lvl1.txt.
+	 */
+	public static Path getOutputFile(Path input, Path outputDirectory) {
+		String name = input.getFileName().toString();
+		String outputName = name.startsWith(INPUT_PREFIX) ? OUTPUT_PREFIX + name.substring(INPUT_PREFIX.length()) : OUTPUT_PREFIX + "_" + name;
+		Path directory = input.toAbsolutePath().normalize().getParent();
+		Path workingDirectory = Paths.get("").toAbsolutePath();
+		Path relative = directory.startsWith(workingDirectory) ? workingDirectory.relativize(directory) : directory.getRoot().relativize(directory);
+		return outputDirectory.resolve(relative).resolve(outputName);
+	}
+
+	/**
+	 * Makes the directories of an output file
+	 *
+	 * @param overwrite whether the file may already be there
+	 * @return the output file
+	 * @throws FileAlreadyExistsException when the file is there and may not be overwritten
+	 */
+	public static Path prepareOutputFile(Path output, boolean overwrite) throws IOException {
+		if(!overwrite && Files.exists(output)) {
+			throw new FileAlreadyExistsException(output.toString(), null, "already exists, use " + OVERWRITE_OPTION + " to replace it");
+		}
+		if(output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		return output;
+	}
+
+	/**
+	 * The input files of a directory or a glob, sorted by path
+	 */
+	public static List<Path> findInputFiles(String directoryOrGlob) throws IOException {
+		Path directory = Paths.get(directoryOrGlob);
+		PathMatcher matcher;
+		int maxDepth;
+		if(!hasWildcard(directoryOrGlob) && Files.isDirectory(directory)) {
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + INPUT_PREFIX + "*.txt");
+			maxDepth = 1;
+		}
+		else {
+			//WALK FROM THE LAST DIRECTORY BEFORE THE FIRST WILDCARD
+			int wildcard = firstWildcard(directoryOrGlob);
+			int separator = Math.max(directoryOrGlob.lastIndexOf('/', wildcard), directoryOrGlob.lastIndexOf('\\', wildcard));
+			directory = Paths.get(separator < 0 ? "." : directoryOrGlob.substring(0, separator + 1));
+			String pattern = directoryOrGlob.substring(separator + 1);
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			maxDepth = pattern.contains("**") || pattern.contains("/") ? Integer.MAX_VALUE : 1;
+		}
+		Path root = directory;
+		try(Stream<Path> files = Files.walk(root, maxDepth)) {
+			return files.filter(Files::isRegularFile)
+					.filter(file -> matcher.matches(maxDepth == 1 ? file.getFileName() : root.relativize(file)))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static boolean hasWildcard(String path) {
+		return firstWildcard(path) < path.length();
+	}
+
+	private static int firstWildcard(String path) {
+		for(int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if(c == '*' || c == '?' || c == '[' || c == '{') {
+				return i;
+			}
+		}
+		return path.length();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		boolean overwrite = false;
+		Path outputDirectory = Paths.get(DEFAULT_OUTPUT_DIRECTORY);
+		int first = 0;
+		while(first < args.length && args[first].startsWith("--")) {
+			if(args[first].equals(OVERWRITE_OPTION)) {
+				overwrite = true;
+			}
+			else if(args[first].startsWith(OUTPUT_DIRECTORY_OPTION)) {
+				outputDirectory = Paths.get(args[first].substring(OUTPUT_DIRECTORY_OPTION.length()));
+			}
+			else {
+				System.out.println("Unknown option " + args[first]);
+				return;
+			}
+			first++;
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
+		if(args.length < 1) {
+			System.out.println("Usage: BatchSolver [" + OVERWRITE_OPTION + "] [" + OUTPUT_DIRECTORY_OPTION
+					+ "<directory>] <directory|glob> [parallel solves] [mode] [time per decision in ms] [metrics file]");
+			return;
+		}
+		SearchConfig config = new SearchConfig();
+		config.setVerbose(false);
+		int parallelSolves = Runtime.getRuntime().availableProcessors();
+		if(args.length > 1) {
+			parallelSolves = Integer.parseInt(args[1]);
+		}
+		if(args.length > 2) {
+			config.setMode(SolverMode.valueOf(args[2]));
+		}
+		if(args.length > 3) {
+			config.getBudget().setTimeMillis(Long.parseLong(args[3]));
+		}
+		if(args.length > 4) {
+			config.setMetricsFile(args[4]);
+		}
+		//THE SOLVES SHARE THE CORES, SO A PARALLEL SEARCH MODE ONLY GETS ITS SHARE OF THEM
+		config.setThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / parallelSolves));
+		List<Path> inputs = findInputFiles(args[0]);
+		if(inputs.isEmpty()) {
+			System.out.println("No input files found for " + args[0]);
+			return;
+		}
+		new BatchSolver(config, parallelSolves, outputDirectory, overwrite).run(inputs);
+	}
+
+}
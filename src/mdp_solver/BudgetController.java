@@ -0,0 +1,133 @@
+package mdp_solver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one search of MCTS within its SearchBudget. Every search thread asks keepSearching() before each
+ * iteration. The iteration and node counts are checked every time, the clock (System.nanoTime) and the
+ * early stop only every clockCheckInterval iterations, since they cost more than the counters.
+ *
+ * Once a limit is reached every thread gets false from then on.
+ */
+public class BudgetController {
+
+	private static final double RATE_SAFETY_FACTOR = 2;
+
+	private final SearchBudget budget;
+	private final EarlyStoppable search;
+	private final AtomicLong iterations;
+	private final AtomicLong nodes;
+	private volatile boolean stopped;
+	private volatile boolean stoppedEarly;
+	private volatile long savedIterations;
+	private long startTime;
+	private long deadline;
+
+	/**
+	 * @param budget the limits of the search
+	 * @param search the search to ask whether its decision is already made, for the early stop
+	 */
+	public BudgetController(SearchBudget budget, EarlyStoppable search) {
+		if(budget.getTimeMillis() == 0 && budget.getMaxIterations() == 0 && budget.getMaxNodes() == 0) {
+			throw new IllegalArgumentException("The search budget has no limit");
+		}
+		this.budget = budget;
+		this.search = search;
+		iterations = new AtomicLong();
+		nodes = new AtomicLong();
+	}
+
+	public void start() {
+		iterations.set(0);
+		nodes.set(0);
+		stopped = false;
+		stoppedEarly = false;
+		savedIterations = 0;
+		startTime = System.nanoTime();
+		deadline = startTime + budget.getTimeMillis() * 1000000L;
+	}
+
+	/**
+	 * Counts the iteration the calling thread is about to start.
+	 *
+	 * @return whether it may start it
+	 */
+	public boolean keepSearching() {
+		if(stopped) {
+			return false;
+		}
+		long started = iterations.incrementAndGet();
+		if((budget.getMaxIterations() > 0 && started > budget.getMaxIterations())
+				|| (budget.getMaxNodes() > 0 && nodes.get() >= budget.getMaxNodes())) {
+			return stop(false);
+		}
+		if(started % budget.getClockCheckInterval() != 0) {
+			return true;
+		}
+		long now = System.nanoTime();
+		if(budget.getTimeMillis() > 0 && now - deadline >= 0) {
+			return stop(false);
+		}
+		if(budget.isEarlyStop()) {
+			if(search.isDecided(getRemainingIterations(started, now, RATE_SAFETY_FACTOR))) {
+				savedIterations = getRemainingIterations(started, now, 1);
+				return stop(true);
+			}
+		}
+		return true;
+	}
+
+	//THE ITERATION THAT WAS ABOUT TO START IS NOT COUNTED
+	private boolean stop(boolean early) {
+		iterations.decrementAndGet();
+		stoppedEarly |= early;
+		stopped = true;
+		return false;
+	}
+
+	//HOW MANY ITERATIONS ARE LEFT, FROM THE ITERATION LIMIT AND THE RATE SO FAR. Long.MAX_VALUE WHEN ONLY NODES ARE LIMITED.
+	//THE RATE CAN GO UP AS THE SEARCH GOES ON, SO THE EARLY STOP PADS THE TIME ESTIMATE BY RATE_SAFETY_FACTOR.
+	private long getRemainingIterations(long started, long now, double rateFactor) {
+		long remaining = Long.MAX_VALUE;
+		if(budget.getMaxIterations() > 0) {
+			remaining = budget.getMaxIterations() - started;
+		}
+		if(budget.getTimeMillis() > 0) {
+			long elapsed = Math.max(1, now - startTime);
+			double rate = (double) started / elapsed;
+			remaining = Math.min(remaining, (long) Math.ceil(rateFactor * rate * (deadline - now)));
+		}
+		return remaining;
+	}
+
+	/**
+	 * Counts nodes added to the tree, for the node limit
+	 */
+	public void addNodes(int added) {
+		nodes.addAndGet(added);
+	}
+
+	public long getIterations() {
+		return iterations.get();
+	}
+
+	public long getNodes() {
+		return nodes.get();
+	}
+
+	/**
+	 * @return the estimated number of iterations left in the budget when the search stopped early, 0 when it did not
+	 */
+	public long getSavedIterations() {
+		return savedIterations;
+	}
+
+	public boolean isStoppedEarly() {
+		return stoppedEarly;
+	}
+
+	public long getElapsedMillis() {
+		return (System.nanoTime() - startTime) / 1000000L;
+	}
+
+}
@@ -0,0 +1,309 @@
+package mdp_solver;
+
+import problem.Action;
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * MCTS on a CompactTree, for searches too big for a tree of Node objects. It searches like MCTS on a
+ * single thread: UCB down the decision nodes, a rollout from a leaf on its first visit and an expansion
+ * on its second, with the rollouts of RolloutPolicy. Below the chance node of CONTINUE_MOVING one outcome
+ * is sampled per iteration, so only the outcomes that come up are searched.
+ *
+ * The time of a node is not stored, it is added up on the way down from the time of the root. The
+ * children that can not reach the goal by maxT are left out of an expansion, and an outcome that can not
+ * is valued 0 without a rollout (see FeasibilityBounds).
+ */
+public class CompactMCTS implements Planner, EarlyStoppable {
+
+	private static final double C = Math.sqrt(5); //THE SAME EXPLORATION AS Node
+	private static final int ROOT = 0;
+
+	private ProblemSpec ps;
+	private ActionSpace actionSpace;
+	private MDPSolver mdp;
+	private OwnSimulator ownSim;
+	private RolloutPolicy rolloutPolicy;
+	private FeasibilityBounds bounds; //null WHEN NOTHING IS PRUNED
+	private boolean pruning; //NOT WHEN THE ROOT ITSELF CAN NOT REACH THE GOAL ANY MORE, ALL ITS CHILDREN WOULD GO
+	private CompactTree tree;
+	private BudgetController budget;
+	private SearchMetrics metrics; //null when no metrics are collected
+	private int rootTime;
+	private int goal;
+	private int notGoal;
+	//SCRATCH FOR EXPANSIONS, ONLY ONE THREAD SEARCHES
+	private long[] childStates;
+	private int[] childActions;
+	private long[] outcomeStates;
+	private double[] outcomeProbabilities;
+	private int[] outcomeDurations;
+
+	public CompactMCTS(ProblemSpec ps, ActionSpace actionSpace, MDPSolver mdp, State rootState, OwnSimulator ownSim) {
+		this.ps = ps;
+		this.actionSpace = actionSpace;
+		this.mdp = mdp;
+		this.ownSim = ownSim;
+		rolloutPolicy = new RolloutPolicy(ps, actionSpace, ownSim, mdp.getRolloutValues());
+		bounds = mdp.getFeasibilityBounds();
+		tree = new CompactTree();
+		tree.setRoot(PackedState.pack(rootState, ps));
+		rootTime = 0;
+		budget = new BudgetController(mdp.getSearchConfig().getBudget(), this);
+		childStates = new long[actionSpace.size()];
+		childActions = new int[actionSpace.size()];
+		outcomeStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		outcomeProbabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		outcomeDurations = new int[ProblemSpec.CAR_MOVE_RANGE];
+	}
+
+	@Override
+	public Action nextAction() {
+		if(ownSim.isGoalState(tree.getState(ROOT))) {
+			return null;
+		}
+		Action forcedAction = getForcedAction();
+		if(forcedAction != null) { //NOTHING TO SEARCH FOR
+			if(mdp.getSearchConfig().isVerbose()) {
+				System.out.println("Forced " + forcedAction.getText() + ", search skipped");
+			}
+			return forcedAction;
+		}
+		search();
+		if(mdp.getSearchConfig().isVerbose()) {
+			System.out.println("Hit goal: " + goal);
+			System.out.println("--------");
+			System.out.println("Did not hit goal " + notGoal);
+			System.out.println("Compact tree: " + tree.size() + " nodes, " + (tree.getAllocatedBytes() >> 20) + " MB");
+		}
+		if(metrics != null) {
+			mdp.recordMetrics(getMetrics(), rootTime);
+		}
+		return selectBestAction();
+	}
+
+	/**
+	 * The tree is not reused, the next search starts from the state the real simulator returned
+	 */
+	@Override
+	public void advance(Action action, State resultState, int timeUnits) {
+		tree.setRoot(PackedState.pack(resultState, ps));
+		rootTime = timeUnits;
+	}
+
+	//WITHOUT ENOUGH FUEL TO MOVE IT IS ALWAYS TO ADD FUEL, THE SAME AS MCTS
+	private Action getForcedAction() {
+		long rootState = tree.getState(ROOT);
+		if(ps.getLevel().getLevelNumber() > 1 && PackedState.getFuel(rootState) < ownSim.getFuelConsumption(rootState)) {
+			return actionSpace.get(actionSpace.getFuelIndex());
+		}
+		return null;
+	}
+
+	private void search() {
+		goal = 0;
+		notGoal = 0;
+		metrics = (mdp.getSearchConfig().getMetricsFile() == null) ? null : new SearchMetrics();
+		pruning = bounds != null && bounds.isFeasible(tree.getState(ROOT), rootTime);
+		budget.start();
+		while(budget.keepSearching()) {
+			iterate();
+		}
+	}
+
+	//ONE SELECT/EXPAND/ROLLOUT/BACKPROPAGATE FROM THE ROOT
+	private void iterate() {
+		long startTime = now();
+		long expandNanos = 0;
+		int node = ROOT;
+		long state = tree.getState(ROOT);
+		int time = rootTime;
+		int depth = 0;
+		Action previousAction = null;
+		boolean feasible = true;
+		while(time < ps.getMaxT() && !ownSim.isGoalState(state)) {
+			if(tree.isChance(node)) {
+				if(tree.getFirstChild(node) == CompactTree.NONE) {
+					long expandTime = now();
+					expandChance(node, state);
+					expandNanos += now() - expandTime;
+				}
+				int outcome = (tree.getChildCount(node) == 1) ? 0 : ownSim.sampleMoveIndex(state);
+				node = tree.getFirstChild(node) + outcome;
+				time += (tree.getChildCount(tree.getParent(node)) == 1) ? 1 : getOutcomeDuration(outcome);
+				state = tree.getState(node);
+				depth++;
+				if(pruning && !bounds.isFeasible(state, time)) { //NOTHING BELOW IT CAN GET A REWARD
+					feasible = false;
+					break;
+				}
+				continue;
+			}
+			if(tree.getFirstChild(node) == CompactTree.NONE) {
+				if(tree.getVisits(node) == 0) { //ROLLOUT FIRST, EXPAND ON THE NEXT VISIT
+					break;
+				}
+				long expandTime = now();
+				expandDecision(node, state, time);
+				expandNanos += now() - expandTime;
+			}
+			node = selectChild(node);
+			int action = tree.getAction(node);
+			previousAction = actionSpace.get(action);
+			if(action != ActionSpace.MOVE) { //THE TIME OF A MOVE IS ADDED WITH ITS OUTCOME
+				time += actionSpace.getDuration(action);
+			}
+			state = tree.getState(node);
+			depth++;
+		}
+		long selectedTime = now();
+
+		double reward = 0;
+		if(feasible) {
+			reward = rolloutPolicy.simulate(state, time, previousAction, metrics);
+		}
+		else if(metrics != null) {
+			metrics.addPrunedDescent();
+		}
+		long simulatedTime = now();
+		if(reward > 0) {
+			goal++;
+		}
+		else {
+			notGoal++;
+		}
+		for(int i = node; i != CompactTree.NONE; i = tree.getParent(i)) {
+			tree.addReward(i, reward);
+		}
+		if(metrics != null) {
+			metrics.addIteration(depth, selectedTime - startTime - expandNanos, expandNanos);
+			metrics.addBackprop(now() - simulatedTime);
+		}
+	}
+
+	//ONE CHILD PER ACTION, LEAVING OUT THE ACTIONS THAT DO NOT CHANGE THE STATE AND THE ONES THAT CAN NOT REACH THE GOAL BY maxT
+	private void expandDecision(int node, long state, int time) {
+		childStates[0] = state;
+		childActions[0] = ActionSpace.MOVE;
+		int count = 1;
+		int pruned = 0;
+		for(int a = ActionSpace.MOVE + 1; a < actionSpace.size(); a++) {
+			if(!actionSpace.isNoOp(a, state)) {
+				childStates[count] = actionSpace.step(a, state);
+				if(pruning && !bounds.isFeasible(childStates[count], time + actionSpace.getDuration(a))) {
+					pruned++;
+					continue;
+				}
+				childActions[count++] = a;
+			}
+		}
+		if(metrics != null) {
+			metrics.addPrunedChildren(pruned);
+		}
+		int first = tree.addChildren(node, count);
+		for(int i = 0; i < count; i++) {
+			tree.setChild(first + i, childStates[i], childActions[i]);
+		}
+		budget.addNodes(count);
+	}
+
+	private void expandChance(int node, long state) {
+		int count = ownSim.getMoveOutcomes(state, outcomeStates, outcomeProbabilities, outcomeDurations);
+		int first = tree.addChildren(node, count);
+		for(int k = 0; k < count; k++) {
+			tree.setChild(first + k, outcomeStates[k], -1 - k);
+		}
+		budget.addNodes(count);
+	}
+
+	private int getOutcomeDuration(int outcome) {
+		return OwnSimulator.getMoveDuration(ps, ps.convertIndexIntoMove(outcome));
+	}
+
+	//UCB1, A CHILD THAT HAS NEVER BEEN VISITED GOES FIRST
+	private int selectChild(int node) {
+		int first = tree.getFirstChild(node);
+		int end = first + tree.getChildCount(node);
+		double logVisits = Math.log(tree.getVisits(node));
+		int best = first;
+		double bestUCB = -1;
+		for(int child = first; child < end; child++) {
+			int visits = tree.getVisits(child);
+			if(visits == 0) {
+				return child;
+			}
+			double ucb = tree.getValueSum(child) / visits + C * Math.sqrt(logVisits / visits);
+			if(ucb > bestUCB) {
+				best = child;
+				bestUCB = ucb;
+			}
+		}
+		return best;
+	}
+
+	//THE CHILD OF THE ROOT WITH THE BEST AVERAGE VALUE, TIES GO TO THE MOST VISITED AND THEN TO THE FIRST, A1 (SEE MCTS.selectBestAction)
+	private Action selectBestAction() {
+		int first = tree.getFirstChild(ROOT);
+		if(first == CompactTree.NONE) {
+			return actionSpace.get(0);
+		}
+		int best = first;
+		double bestValue = -1;
+		int bestVisits = 0;
+		for(int child = first; child < first + tree.getChildCount(ROOT); child++) {
+			int visits = tree.getVisits(child);
+			if(visits == 0) {
+				continue;
+			}
+			double avgValue = tree.getValueSum(child) / visits;
+			if(avgValue > bestValue || (avgValue == bestValue && visits > bestVisits)) {
+				best = child;
+				bestValue = avgValue;
+				bestVisits = visits;
+			}
+		}
+		return actionSpace.get(tree.getAction(best));
+	}
+
+	/**
+	 * The rules of EarlyStopRules, with the best reward any rollout from below the root can get
+	 */
+	@Override
+	public boolean isDecided(long remainingIterations) {
+		int first = tree.getFirstChild(ROOT);
+		if(first == CompactTree.NONE) {
+			return false;
+		}
+		int count = tree.getChildCount(ROOT);
+		int distance = ps.getN() - PackedState.getPos(tree.getState(ROOT));
+		double maxReward = 100.0 / (rootTime + Math.max(1, (distance + ProblemSpec.CAR_MAX_MOVE - 1) / ProblemSpec.CAR_MAX_MOVE));
+		int[] visits = new int[count];
+		double[] valueSums = new double[count];
+		double[] maxRewards = new double[count];
+		for(int i = 0; i < count; i++) {
+			visits[i] = tree.getVisits(first + i);
+			valueSums[i] = tree.getValueSum(first + i);
+			maxRewards[i] = maxReward;
+		}
+		double remainingVisits = (remainingIterations == Long.MAX_VALUE) ? Double.POSITIVE_INFINITY : remainingIterations;
+		return EarlyStopRules.isDecided(count, visits, valueSums, maxRewards, remainingVisits,
+				mdp.getSearchConfig().getBudget().getSeparationConfidence());
+	}
+
+	//THE CLOCK IS ONLY READ WHEN METRICS ARE COLLECTED
+	private long now() {
+		return (metrics == null) ? 0 : System.nanoTime();
+	}
+
+	private SearchMetrics getMetrics() {
+		metrics.setSearch(budget.getIterations(), budget.getNodes(), budget.getElapsedMillis(), budget.isStoppedEarly());
+		int first = tree.getFirstChild(ROOT);
+		if(first != CompactTree.NONE) {
+			for(int child = first; child < first + tree.getChildCount(ROOT); child++) {
+				metrics.addRootVisits(actionSpace.get(tree.getAction(child)).getText(), tree.getVisits(child));
+			}
+		}
+		return metrics;
+	}
+
+}
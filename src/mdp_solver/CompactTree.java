@@ -0,0 +1,205 @@
+package mdp_solver;
+
+import java.util.Arrays;
+
+/**
+ * A search tree stored as parallel primitive arrays instead of Node objects. A node is an int index and
+ * costs BYTES_PER_NODE bytes: its packed state, summed value, visits, parent, first child, number of
+ * children and the action that leads to it. The children of a node are allocated together, so they are
+ * the indices [firstChild, firstChild + childCount).
+ *
+ * The arrays grow in chunks of CHUNK_SIZE nodes, so growing never copies the nodes already stored and a
+ * search can hold tens of millions of nodes.
+ *
+ * There are two kinds of nodes. A decision node picks an action, its children are one node per action.
+ * The child for CONTINUE_MOVING is a chance node with the same state, whose children are the outcomes of
+ * the move. The action of a node is its index in the action space, or -1 - k for outcome k of a chance
+ * node. Not thread safe.
+ */
+public class CompactTree {
+
+	public static final int NONE = -1;
+	public static final int BYTES_PER_NODE = 8 + 8 + 4 + 4 + 4 + 2 + 2;
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private long[][] states;
+	private double[][] valueSums;
+	private int[][] visits;
+	private int[][] parents;
+	private int[][] firstChildren;
+	private short[][] childCounts;
+	private short[][] actions;
+	private int chunks;
+	private int size;
+
+	public CompactTree() {
+		states = new long[1][];
+		valueSums = new double[1][];
+		visits = new int[1][];
+		parents = new int[1][];
+		firstChildren = new int[1][];
+		childCounts = new short[1][];
+		actions = new short[1][];
+		chunks = 0;
+		size = 0;
+	}
+
+	/**
+	 * Removes every node. The chunks are kept for the next tree.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Clears the tree and adds a decision node with the given state as its only node
+	 *
+	 * @return the index of the root, always 0
+	 */
+	public int setRoot(long state) {
+		clear();
+		int root = allocate(1);
+		init(root, state, NONE, Short.MIN_VALUE);
+		return root;
+	}
+
+	/**
+	 * Allocates count children below a node that has none. Their states and actions are set with setChild.
+	 *
+	 * @return the index of the first child
+	 */
+	public int addChildren(int parent, int count) {
+		if(count > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many children for one node: " + count);
+		}
+		int first = allocate(count);
+		firstChildren[parent >>> CHUNK_BITS][parent & CHUNK_MASK] = first;
+		childCounts[parent >>> CHUNK_BITS][parent & CHUNK_MASK] = (short) count;
+		for(int i = first; i < first + count; i++) {
+			init(i, 0, parent, 0);
+		}
+		return first;
+	}
+
+	public void setChild(int node, long state, int action) {
+		states[node >>> CHUNK_BITS][node & CHUNK_MASK] = state;
+		actions[node >>> CHUNK_BITS][node & CHUNK_MASK] = (short) action;
+	}
+
+	private void init(int node, long state, int parent, int action) {
+		int chunk = node >>> CHUNK_BITS;
+		int i = node & CHUNK_MASK;
+		states[chunk][i] = state;
+		valueSums[chunk][i] = 0;
+		visits[chunk][i] = 0;
+		parents[chunk][i] = parent;
+		firstChildren[chunk][i] = NONE;
+		childCounts[chunk][i] = 0;
+		actions[chunk][i] = (short) action;
+	}
+
+	private int allocate(int count) {
+		if((long) size + count > Integer.MAX_VALUE) {
+			throw new IllegalStateException("The compact tree is full");
+		}
+		int first = size;
+		size += count;
+		while(chunks << CHUNK_BITS < size) {
+			addChunk();
+		}
+		return first;
+	}
+
+	private void addChunk() {
+		if(chunks == states.length) {
+			int length = states.length * 2;
+			states = Arrays.copyOf(states, length);
+			valueSums = Arrays.copyOf(valueSums, length);
+			visits = Arrays.copyOf(visits, length);
+			parents = Arrays.copyOf(parents, length);
+			firstChildren = Arrays.copyOf(firstChildren, length);
+			childCounts = Arrays.copyOf(childCounts, length);
+			actions = Arrays.copyOf(actions, length);
+		}
+		if(states[chunks] == null) { //CHUNKS KEPT FROM A CLEARED TREE ARE REUSED
+			states[chunks] = new long[CHUNK_SIZE];
+			valueSums[chunks] = new double[CHUNK_SIZE];
+			visits[chunks] = new int[CHUNK_SIZE];
+			parents[chunks] = new int[CHUNK_SIZE];
+			firstChildren[chunks] = new int[CHUNK_SIZE];
+			childCounts[chunks] = new short[CHUNK_SIZE];
+			actions[chunks] = new short[CHUNK_SIZE];
+		}
+		chunks++;
+	}
+
+	/**
+	 * Counts a visit of the node with the given reward
+	 */
+	public void addReward(int node, double reward) {
+		valueSums[node >>> CHUNK_BITS][node & CHUNK_MASK] += reward;
+		visits[node >>> CHUNK_BITS][node & CHUNK_MASK]++;
+	}
+
+	public long getState(int node) {
+		return states[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public double getValueSum(int node) {
+		return valueSums[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getVisits(int node) {
+		return visits[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getParent(int node) {
+		return parents[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * @return the index of the first child, NONE when the node has not been expanded
+	 */
+	public int getFirstChild(int node) {
+		return firstChildren[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	public int getChildCount(int node) {
+		return childCounts[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * @return the index in the action space of the action that leads to the node, or -1 - k for outcome k of a chance node
+	 */
+	public int getAction(int node) {
+		return actions[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * Whether the node is the chance node of CONTINUE_MOVING below a decision node
+	 */
+	public boolean isChance(int node) {
+		return getParent(node) != NONE && getAction(node) == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the memory held by the chunks, in bytes
+	 */
+	public long getAllocatedBytes() {
+		long allocated = 0;
+		for(long[] chunk : states) {
+			if(chunk != null) {
+				allocated += (long) CHUNK_SIZE * BYTES_PER_NODE;
+			}
+		}
+		return allocated;
+	}
+
+}
@@ -0,0 +1,64 @@
+package mdp_solver;
+
+/**
+ * The rules MCTS and CompactMCTS use to tell that the child of the root with the best average value stays
+ * the best whatever the remaining iterations bring. It does when the root has a single child, otherwise
+ * every other child has to be out of the race, which it is when either
+ *  - even with all remaining visits at the best reward it can still reach, its average stays below the
+ *    leader's average with all of them at reward 0, or
+ *  - the confidence intervals are separated: the upper confidence bound of the child is below the lower
+ *    confidence bound of the leader, by Hoeffding's inequality with rewards in [0, best reward] and the
+ *    separation confidence of the budget.
+ * The remaining visits are only an estimate, so when they are unknown only the second rule applies.
+ */
+final class EarlyStopRules {
+
+	private EarlyStopRules() {
+	}
+
+	/**
+	 * @param count the number of children of the root
+	 * @param visits the visits of each child
+	 * @param valueSums the summed rewards of each child
+	 * @param maxRewards the best reward a rollout below each child can get
+	 * @param remainingVisits the visits left in the budget, Double.POSITIVE_INFINITY when unknown
+	 * @param separationConfidence the confidence the intervals are built with, between 0 and 1
+	 */
+	static boolean isDecided(int count, int[] visits, double[] valueSums, double[] maxRewards, double remainingVisits,
+			double separationConfidence) {
+		if(count == 1) {
+			return true;
+		}
+		int leader = -1;
+		double bestValue = -1;
+		for(int child = 0; child < count; child++) {
+			if(visits[child] == 0) {
+				return false;
+			}
+			if(valueSums[child] / visits[child] > bestValue) {
+				leader = child;
+				bestValue = valueSums[child] / visits[child];
+			}
+		}
+		if(leader < 0) {
+			return false;
+		}
+		boolean knownRemaining = !Double.isInfinite(remainingVisits);
+		double leaderLowest = valueSums[leader] / (visits[leader] + remainingVisits);
+		double logTerm = Math.log(1 / (1 - separationConfidence));
+		double leaderLCB = bestValue - maxRewards[leader] * Math.sqrt(logTerm / (2 * visits[leader]));
+		for(int child = 0; child < count; child++) {
+			if(child == leader) {
+				continue;
+			}
+			boolean outOfValue = knownRemaining
+					&& (valueSums[child] + remainingVisits * maxRewards[child]) / (visits[child] + remainingVisits) < leaderLowest;
+			boolean separated = valueSums[child] / visits[child] + maxRewards[child] * Math.sqrt(logTerm / (2 * visits[child])) < leaderLCB;
+			if(!outOfValue && !separated) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,16 @@
+package mdp_solver;
+
+/**
+ * A search that can tell when more searching would no longer change its decision, for the early stop of
+ * BudgetController.
+ */
+public interface EarlyStoppable {
+
+	/**
+	 * @param remainingIterations an estimate of the iterations left in the budget, only exact for an iteration limit,
+	 *                            Long.MAX_VALUE when unknown
+	 * @return whether the action the search would pick now is the one it would pick after the remaining iterations
+	 */
+	boolean isDecided(long remainingIterations);
+
+}
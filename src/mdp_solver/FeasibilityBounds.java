@@ -0,0 +1,134 @@
+package mdp_solver;
+
+import problem.ProblemSpec;
+
+/**
+ * Lower bounds on the time it takes to get from a state to the goal, worked out once from the ProblemSpec,
+ * so the search can leave out the states that can not reach the goal by maxT. The reward of those is 0
+ * whatever is done from them.
+ *
+ * - minSteps: the fewest CONTINUE_MOVING it takes from a cell, with every move that has any chance of
+ *   happening on the terrain of the cell with any car, driver, tire and pressure. Moving back is allowed,
+ *   a terrain further back can allow longer moves.
+ * - minFuel (from level 2): the least fuel the car and pressure of a state burn on the way from a cell, over
+ *   the same moves. With less fuel than that in the tank the car has to stop for fuel or change something
+ *   before it gets there, which takes at least one more time unit.
+ *
+ * Both are exact shortest paths over the cells, so a state's bound is never more than one step plus the
+ * bound of where a move takes it.
+ */
+public class FeasibilityBounds {
+
+	private static final int UNREACHABLE = Integer.MAX_VALUE / 4; //STAYS POSITIVE WITH THE TIME ADDED
+
+	private ProblemSpec ps;
+	private int N;
+	private int maxT;
+	private boolean fuel;
+	/** minSteps[pos] for pos 1 to N **/
+	private int[] minSteps;
+	/** minFuel[(car * TIRE_PRESSURE_LEVELS + pressure) * (N + 1) + pos] **/
+	private int[] minFuel;
+
+	public FeasibilityBounds(ProblemSpec ps, OwnSimulator ownSim) {
+		this.ps = ps;
+		N = ps.getN();
+		maxT = ps.getMaxT();
+		fuel = ps.getLevel().getLevelNumber() > 1;
+		boolean[][] possibleMoves = findPossibleMoves();
+		minSteps = new int[N + 1];
+		solveShortestPaths(minSteps, 0, possibleMoves, null);
+		if(fuel) {
+			minFuel = new int[ps.getCT() * ProblemSpec.TIRE_PRESSURE_LEVELS * (N + 1)];
+			int[] consumption = new int[N + 1];
+			for(int car = 0; car < ps.getCT(); car++) {
+				for(int pressure = 0; pressure < ProblemSpec.TIRE_PRESSURE_LEVELS; pressure++) {
+					for(int pos = 1; pos <= N; pos++) {
+						consumption[pos] = ownSim.getFuelConsumption(PackedState.pack(pos, false, false, car, ProblemSpec.FUEL_MAX, pressure, 0, 0));
+					}
+					solveShortestPaths(minFuel, (car * ProblemSpec.TIRE_PRESSURE_LEVELS + pressure) * (N + 1), possibleMoves, consumption);
+				}
+			}
+		}
+	}
+
+	//possibleMoves[terrain][k]: WHETHER OUTCOME k OF A MOVE HAS A CHANCE ON THE TERRAIN, THE ROWS OF A TERRAIN COME ONE AFTER THE OTHER
+	private boolean[][] findPossibleMoves() {
+		double[] moveProbs = ps.getMoveProbabilities();
+		int rowsPerTerrain = moveProbs.length / ProblemSpec.CAR_MOVE_RANGE / ps.getNT();
+		boolean[][] possibleMoves = new boolean[ps.getNT()][ProblemSpec.CAR_MOVE_RANGE];
+		for(int terrain = 0; terrain < ps.getNT(); terrain++) {
+			int start = terrain * rowsPerTerrain * ProblemSpec.CAR_MOVE_RANGE;
+			for(int i = 0; i < rowsPerTerrain * ProblemSpec.CAR_MOVE_RANGE; i++) {
+				if(moveProbs[start + i] > 0) {
+					possibleMoves[terrain][i % ProblemSpec.CAR_MOVE_RANGE] = true;
+				}
+			}
+		}
+		return possibleMoves;
+	}
+
+	//BELLMAN-FORD TOWARDS THE GOAL, A MOVE FROM pos COSTS 1 OR costs[pos]. THERE ARE ONLY N CELLS.
+	private void solveShortestPaths(int[] distances, int start, boolean[][] possibleMoves, int[] costs) {
+		int[] successors = ps.getMoveSuccessors();
+		for(int pos = 1; pos < N; pos++) {
+			distances[start + pos] = UNREACHABLE;
+		}
+		distances[start + N] = 0;
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int pos = N - 1; pos >= 1; pos--) {
+				boolean[] moves = possibleMoves[ps.getTerrainIndexOfCell(pos)];
+				int cost = (costs == null) ? 1 : costs[pos];
+				for(int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+					int next = successors[pos * ProblemSpec.CAR_MOVE_RANGE + k];
+					if(moves[k] && next != pos && distances[start + next] + cost < distances[start + pos]) {
+						distances[start + pos] = distances[start + next] + cost;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The fewest moves from a cell to the goal, a very large number when no move can get there
+	 */
+	public int getMinSteps(int pos) {
+		return minSteps[pos];
+	}
+
+	/**
+	 * The least fuel the car and tire pressure of a state need to get from its cell to the goal, 0 on level 1
+	 */
+	public int getMinFuel(long state) {
+		if(!fuel) {
+			return 0;
+		}
+		int combination = PackedState.getCar(state) * ProblemSpec.TIRE_PRESSURE_LEVELS + PackedState.getPressure(state);
+		return minFuel[combination * (N + 1) + PackedState.getPos(state)];
+	}
+
+	/**
+	 * A lower bound on the time units from a state to the goal: the fewest moves, and one more when the
+	 * fuel in the tank is not enough for them
+	 */
+	public int getMinTimeToGoal(long state) {
+		int steps = minSteps[Math.min(PackedState.getPos(state), N)];
+		if(fuel && steps > 0 && PackedState.getFuel(state) < getMinFuel(state)) {
+			steps++;
+		}
+		return steps;
+	}
+
+	/**
+	 * Whether the goal can still be reached from a state by maxT, so it may get a reward
+	 *
+	 * @param timeUnits the time the state is reached at
+	 */
+	public boolean isFeasible(long state, int timeUnits) {
+		return timeUnits + getMinTimeToGoal(state) <= maxT;
+	}
+
+}
@@ -2,38 +2,96 @@ package mdp_solver;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import problem.Action;
 import problem.ProblemSpec;
-import problem.Tire;
+import simulator.State;
 
-public class MCTS {
+public class MCTS implements Planner, EarlyStoppable {
 	
 	
-	private HashMap<Node, List<Node>> childNodes;
+	//A CONCURRENT MAP SO SEVERAL THREADS CAN SEARCH THE SAME TREE, EVERY NODE IS EXPANDED ONCE WITH putIfAbsent
+	private ConcurrentHashMap<Node, List<Node>> childNodes;
 	private OwnSimulator ownSim;
 	private ProblemSpec ps;
-	private List<Action> actionSpace;
+	private ActionSpace actionSpace;
 	private MDPSolver mdp;
 	private Node rootNode;
 	//private int iterations;
-	private int goal;
-	private int notGoal;
+	private AtomicInteger goal;
+	private AtomicInteger notGoal;
+	private int searchThreads;
+	private ExecutorService executor;
+	private ForkJoinPool leafPool; //null when rollouts run on the searching thread
+	private int rolloutsPerLeaf;
+	private TranspositionTable transpositions; //null when the search is a plain tree
+	private BudgetController budget;
+	private SearchMetrics metrics; //null when no metrics are collected
+	private RolloutPolicy rolloutPolicy;
+	private FeasibilityBounds bounds; //null WHEN NOTHING IS PRUNED
+	//SET BY EACH SEARCH: NOTHING IS PRUNED WHEN THE ROOT ITSELF CAN NOT REACH THE GOAL ANY MORE, ALL ITS CHILDREN WOULD GO
+	private boolean pruning;
+	//THE NODES OF THE TREE COME FROM nodePool. WHEN THE ROOT ADVANCES THE PART THAT IS KEPT IS COPIED INTO sparePool, THEN THE TWO SWAP.
+	private NodePool nodePool;
+	private NodePool sparePool;
 	
 	
-	public MCTS(ProblemSpec ps, List<Action> actionSpace, MDPSolver mdp, Node rootNode) {
-		childNodes = new HashMap<>();
+	public MCTS(ProblemSpec ps, ActionSpace actionSpace, MDPSolver mdp, Node rootNode) {
+		this(ps, actionSpace, mdp, rootNode, new OwnSimulator(ps, mdp));
+	}
+	
+	public MCTS(ProblemSpec ps, ActionSpace actionSpace, MDPSolver mdp, Node rootNode, OwnSimulator ownSim) {
+		this(ps, actionSpace, mdp, rootNode, ownSim, 1);
+	}
+	
+	/**
+	 * @param searchThreads number of threads that search the tree together. With more than one the
+	 *        simulator must be safe to share between threads.
+	 */
+	public MCTS(ProblemSpec ps, ActionSpace actionSpace, MDPSolver mdp, Node rootNode, OwnSimulator ownSim, int searchThreads) {
+		childNodes = new ConcurrentHashMap<>();
 		this.ps = ps;
 		this.actionSpace = actionSpace;
 		this.mdp = mdp;
-		ownSim = new OwnSimulator(ps, mdp);
+		this.ownSim = ownSim;
 		this.rootNode = rootNode;
+		rolloutPolicy = new RolloutPolicy(ps, actionSpace, ownSim, mdp.getRolloutValues());
+		bounds = mdp.getFeasibilityBounds();
+		nodePool = new NodePool(mdp);
+		sparePool = new NodePool(mdp);
 		//iterations = 0;
-		goal = 0;
-		notGoal = 0;
+		goal = new AtomicInteger();
+		notGoal = new AtomicInteger();
+		this.searchThreads = searchThreads;
+		//WITH EXACT ROLLOUT VALUES MORE ROLLOUTS OF A LEAF WOULD ONLY BACK UP COPIES OF ONE VALUE AND INFLATE ITS VISITS,
+		//SO A LEAF IS VALUED ONCE, ON THE SEARCHING THREAD, WHATEVER THE CONFIG ASKS FOR
+		leafPool = rolloutPolicy.isExact() ? null : mdp.getLeafPool();
+		rolloutsPerLeaf = rolloutPolicy.isExact() ? 1 : mdp.getSearchConfig().getRolloutsPerLeaf();
+		budget = new BudgetController(mdp.getSearchConfig().getBudget(), this);
+		if(mdp.getSearchConfig().getTranspositionTableSize() > 0) {
+			transpositions = new TranspositionTable(mdp.getSearchConfig().getTranspositionTableSize(),
+					mdp.getSearchConfig().getTranspositionTimeBucket());
+		}
+		if(searchThreads > 1) {
+			executor = Executors.newFixedThreadPool(searchThreads, runnable -> {
+				Thread thread = new Thread(runnable, "mcts-tree-worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 	
 	//DETTE ER EN ITERASJON
@@ -41,392 +99,619 @@ public class MCTS {
 		if(ownSim.isGoalNode(rootNode)) {
 			return null;
 		}
-		final long startTime = System.currentTimeMillis();
+		Action forcedAction = getForcedAction();
+		if(forcedAction != null) { //NOTHING TO SEARCH FOR
+			if(mdp.getSearchConfig().isVerbose()) {
+				System.out.println("Forced " + forcedAction.getText() + ", search skipped");
+			}
+			return forcedAction;
+		}
+		search();
+		
+		goalRate();
+		if(metrics != null) {
+			mdp.recordMetrics(getMetrics(), rootNode.getTimeUnits());
+		}
+		
+		return selectBestAction(rootNode);
+	}
+	
+	@Override
+	public Action nextAction() {
+		return MCTSIteration();
+	}
+	
+	@Override
+	public void advance(Action action, State resultState, int timeUnits) {
+		advanceRoot(action, resultState, timeUnits);
+	}
+	
+	@Override
+	public void shutdown() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Runs select/expand/rollout/backpropagate from the root until the budget is used up, without picking
+	 * an action. With several search threads they all work on this tree at the same time.
+	 */
+	public void search() {
+		goal.set(0);
+		notGoal.set(0);
+		metrics = (mdp.getSearchConfig().getMetricsFile() == null) ? null : new SearchMetrics();
+		pruning = bounds != null && isFeasible(rootNode);
+		budget.start();
+		if(searchThreads == 1) {
+			searchUntil();
+			return;
+		}
+		List<Callable<Void>> searches = new ArrayList<>();
+		for(int i = 0; i < searchThreads; i++) {
+			searches.add(() -> {
+				searchUntil();
+				return null;
+			});
+		}
+		try {
+			for(Future<Void> search : executor.invokeAll(searches)) {
+				search.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A search thread failed", e.getCause());
+		}
+	}
+	
+	private void searchUntil() {
+		List<Node> path = new ArrayList<>();
 		
 		//DETTE ER EN MINI-ITERASJON
-		while((System.currentTimeMillis() - startTime < 14500)) { //&& iterations < 100000) {
+		while(budget.keepSearching()) {
+			long startTime = now();
 			Node currentNode = rootNode; //START
+			path.add(currentNode);
 			//iterations++;
 			
-			while(childNodes.containsKey(currentNode) || (currentNode instanceof A1Node && childNodes.containsKey(((A1Node)currentNode).getOutcomeNodes().get(0)))) { 
+			//AN A1 NODE IS NEVER A LEAF, THE SEARCH ALWAYS GOES ON TO ONE OF ITS OUTCOMES
+			boolean feasible = true;
+			while(currentNode instanceof A1Node || childNodes.containsKey(currentNode)) { 
 				currentNode = selectNode(currentNode);
-			}
-			if(currentNode.getTotVisits() == 0) {
-				boolean wasGoal = rollout(currentNode);
-				if(wasGoal) { //rollout now returns a boolean for whether it ended up in goal or not. 
-					goal ++;
-				}else {
-					notGoal++;
+				currentNode.addVirtualLoss();
+				path.add(currentNode);
+				if(pruning && !isFeasible(currentNode)) { //NOTHING BELOW IT CAN GET A REWARD
+					feasible = false;
+					break;
 				}
 			}
-			else {
-				Node nodeToRollout = expand(currentNode);
-				boolean wasGoal = rollout(nodeToRollout);
-				if(wasGoal) { //rollout now returns a boolean for whether it ended up in goal or not. 
-					goal ++;
-				}else {
-					notGoal++;
+			long selectedTime = now();
+			int depth = path.size() - 1;
+			if(feasible && currentNode.getTotVisits() > 0) { //ROLLOUT FIRST, EXPAND ON THE NEXT VISIT
+				currentNode = expand(currentNode);
+				currentNode.addVirtualLoss();
+				path.add(currentNode);
+				if(currentNode instanceof A1Node) {
+					currentNode = sampleOutcome((A1Node) currentNode);
+					currentNode.addVirtualLoss();
+					path.add(currentNode);
+					feasible = !pruning || isFeasible(currentNode);
 				}
 			}
+			if(metrics != null) {
+				metrics.addIteration(depth, selectedTime - startTime, now() - selectedTime);
+			}
+			boolean wasGoal = rollout(currentNode, path, feasible);
+			if(wasGoal) { //rollout now returns a boolean for whether it ended up in goal or not. 
+				goal.incrementAndGet();
+			}else {
+				notGoal.incrementAndGet();
+			}
+			for(int i = 1; i < path.size(); i++) {
+				path.get(i).removeVirtualLoss();
+			}
+			path.clear();
 		}
 //		for(Node n : childNodes.get(rootNode)) {
 //			if(n instanceof A1Node) {
 //				System.out.println(n.getAvgValue());
 //				List<Node> outComeNodes = ((A1Node) n).getOutcomeNodes();
 //				for(int i = 0; i < ((A1Node) n).getOutcomeNodes().size(); i++) {
-//					System.out.println(outComeNodes.get(i).getAvgValue() + " |||| " + ((A1Node) n).getMoveProbs()[i]);
+//					System.out.println(outComeNodes.get(i).getAvgValue() + " |||| " + ((A1Node) n).getOutcomeProbability(i));
 //				}
 //			}
 //			else {
 //				System.out.println(n.getAvgValue());
 //			}
 //		}
-		
-		goalRate();
-		
-		return selectBestAction(rootNode);
-		}
+	}
 	
 
+	//THE CLOCK IS ONLY READ WHEN METRICS ARE COLLECTED
+	private long now() {
+		return (metrics == null) ? 0 : System.nanoTime();
+	}
+	
+	/**
+	 * The metrics of the last search, with the visits of the children of the root
+	 * 
+	 * @return null when the search config has no metrics file
+	 */
+	public SearchMetrics getMetrics() {
+		if(metrics == null) {
+			return null;
+		}
+		metrics.setSearch(budget.getIterations(), budget.getNodes(), budget.getElapsedMillis(), budget.isStoppedEarly());
+		List<Node> children = childNodes.get(rootNode);
+		if(children != null) {
+			for(Node child : children) {
+				metrics.addRootVisits(child.getAction().getText(), child.getTotVisits());
+			}
+		}
+		return metrics;
+	}
+	
 	//RETURNS THE BEST ACTION OUT OF THE OPTIONS THAT HAS THE BEST VALUE-SCORE
 	private Action selectBestAction(Node node) {
+		Map<Action, double[]> statistics = new HashMap<>();
+		collectStatistics(node, statistics);
+		return selectBestAction(statistics);
+	}
+	
+	/**
+	 * Picks the action with the best average value from statistics gathered with collectRootStatistics,
+	 * possibly merged from several trees. Equal averages go to the most visited action, and then to the
+	 * first one in the action space, which is A1. When every rollout gives the same reward (all 0 far from
+	 * the goal) the car keeps moving instead of taking whatever action the map happens to list first.
+	 * 
+	 * @param rootStatistics action -> {summed value, summed visits}
+	 * @return the best action from the root
+	 */
+	public Action selectBestAction(Map<Action, double[]> rootStatistics) {
+		Action forcedAction = getForcedAction();
+		if(forcedAction != null) {
+			return forcedAction;
+		}
+		
+		double bestValue = -1;
+		double bestVisits = 0;
+		int bestIndex = Integer.MAX_VALUE;
+		Action bestAction = null;
+		for(Map.Entry<Action, double[]> entry : rootStatistics.entrySet()) {
+			double visits = entry.getValue()[1];
+			if(visits == 0) {
+				continue;
+			}
+			double avgValue = entry.getValue()[0] / visits;
+			int index = actionSpace.getIndex(entry.getKey());
+			if(avgValue > bestValue || (avgValue == bestValue && (visits > bestVisits || (visits == bestVisits && index < bestIndex)))) {
+				bestAction = entry.getKey();
+				bestValue = avgValue;
+				bestVisits = visits;
+				bestIndex = index;
+			}
+		}
+		return bestAction;
+	}
+	
+	/**
+	 * The action selectBestAction takes from the root whatever the search finds, null when it is up to the search.
+	 * Without enough fuel to move it is always to add fuel.
+	 */
+	public Action getForcedAction() {
 		if(ps.getLevel().getLevelNumber() > 1) {
-			if(node.getNodeState().getFuel() < ownSim.getFuelConsumption(node)) {
-				int indexOfFuel = ps.getCT() + ps.getDT() + 4 + 1;
-				return actionSpace.get(indexOfFuel);
+			if(PackedState.getFuel(rootNode.getPackedState()) < ownSim.getFuelConsumption(rootNode)) {
+				return actionSpace.get(actionSpace.getFuelIndex());
 			}
 		}
-		
+		return null;
+	}
+	
+	/**
+	 * Adds the value and visit count of every child of the root to rootStatistics, keyed by the child's action.
+	 * 
+	 * @param rootStatistics action -> {summed value, summed visits}
+	 */
+	public void collectRootStatistics(Map<Action, double[]> rootStatistics) {
+		collectStatistics(rootNode, rootStatistics);
+	}
+	
+	private void collectStatistics(Node node, Map<Action, double[]> actionStatistics) {
 		List<Node> children = childNodes.get(node);
-		double bestValue = -1;
-		Node bestNode = null;
+		if(children == null) {
+			return;
+		}
 		for(Node child : children) {
-			if(child.getAvgValue() > bestValue) {
-				bestNode = child;
-				bestValue = child.getAvgValue();
+			double[] statistics = actionStatistics.computeIfAbsent(child.getAction(), a -> new double[2]);
+			statistics[0] += child.getValue();
+			statistics[1] += child.getTotVisits();
+		}
+	}
+	
+	public boolean isRootGoal() {
+		return ownSim.isGoalNode(rootNode);
+	}
+	
+	public int getGoal() {
+		return goal.get();
+	}
+	
+	public int getNotGoal() {
+		return notGoal.get();
+	}
+	
+	/**
+	 * Moves the root of the tree to the node reached by the action that was actually taken, so that the
+	 * statistics gathered below it carry over to the next decision. For a MOVE the outcome node matching the
+	 * observed state is promoted. The part of the tree below the new root is copied into the spare node pool,
+	 * then the pools swap and the old one is reset, so the nodes no longer reachable are reused.
+	 * 
+	 * @param action the action that was performed in the real simulator
+	 * @param resultState the state the real simulator returned
+	 * @param timeUnits the number of steps the real simulator has taken so far
+	 */
+	public void advanceRoot(Action action, State resultState, int timeUnits) {
+		Node nextRoot = findSuccessor(action, PackedState.pack(resultState, ps), timeUnits - rootNode.getTimeUnits());
+		if(nextRoot == null) { //THE OBSERVED OUTCOME WAS NEVER EXPANDED, START OVER FROM THE REAL STATE
+			nodePool.reset();
+			nextRoot = nodePool.obtain(PackedState.pack(resultState, ps), null, action, false, null);
+			nextRoot.setTimeUnits(timeUnits);
+			childNodes = new ConcurrentHashMap<>();
+			if(transpositions != null) {
+				transpositions.clear();
 			}
 		}
-		return bestNode.getAction();
+		else {
+			int shift = timeUnits - nextRoot.getTimeUnits();
+			ConcurrentHashMap<Node, List<Node>> retained = new ConcurrentHashMap<>();
+			if(transpositions != null) { //THE KEYS CONTAIN THE OLD TIME UNITS, THE RETAINED NODES ARE PUT BACK WITH THE SHIFTED ONES
+				transpositions.clear();
+			}
+			nextRoot = retain(nextRoot, null, shift, retained, new IdentityHashMap<>(), new IdentityHashMap<>());
+			nextRoot.makeRoot();
+			childNodes = retained;
+			NodePool usedPool = nodePool;
+			nodePool = sparePool;
+			sparePool = usedPool;
+			sparePool.reset();
+		}
+		rootNode = nextRoot;
+	}
+	
+	public Node getRootNode() {
+		return rootNode;
+	}
+	
+	private Node findSuccessor(Action action, long resultState, int elapsed) {
+		List<Node> children = childNodes.get(rootNode);
+		if(children == null) {
+			return null;
+		}
+		for(Node child : children) {
+			if(child.getAction() != action) {
+				continue;
+			}
+			if(child instanceof A1Node) {
+				return findOutcome((A1Node) child, resultState, elapsed);
+			}
+			return child.getPackedState() == resultState ? child : null;
+		}
+		return null;
+	}
+	
+	//CLAMPED MOVES ARE MERGED INTO ONE OUTCOME, BUT SLIP, BREAKDOWN AND A MOVE OF 0 END UP IN THE SAME STATE. THE ELAPSED TIME TELLS THEM APART, THE REST GOES TO THE MOST VISITED.
+	private Node findOutcome(A1Node a1Node, long resultState, int elapsed) {
+		List<Node> outcomeNodes = a1Node.getOutcomeNodes();
+		Node bestOutcome = null;
+		for(int i = 0; i < outcomeNodes.size(); i++) {
+			Node outcome = outcomeNodes.get(i);
+			if(a1Node.getOutcomeDuration(i) != Math.max(1, elapsed) || outcome.getPackedState() != resultState) { //A STEP OF 0 IS ONE IN THE TREE
+				continue;
+			}
+			if(bestOutcome == null || outcome.getTotVisits() > bestOutcome.getTotVisits()) {
+				bestOutcome = outcome;
+			}
+		}
+		return bestOutcome;
+	}
+	
+	//COPIES node AND THE EXPANDED PART OF THE SUBTREE BELOW IT INTO THE SPARE POOL WITH THE TIME UNITS MOVED ONTO THE REAL CLOCK,
+	//AND PUTS THE CHILDREN OF THE COPIES INTO retained. copies AND copiedChildren MAP WHAT HAS BEEN COPIED TO ITS COPY, SO THE
+	//NODES AND CHILD LISTS SHARED THROUGH THE TRANSPOSITION TABLE ARE COPIED ONCE AND STAY SHARED.
+	private Node retain(Node node, Node parentCopy, int shift, Map<Node, List<Node>> retained, Map<Node, Node> copies,
+			Map<List<Node>, List<Node>> copiedChildren) {
+		Node copy = copies.get(node);
+		if(copy != null) {
+			return copy;
+		}
+		if(node instanceof A1Node) {
+			A1Node a1Copy = sparePool.copyA1((A1Node) node, parentCopy, shift);
+			copies.put(node, a1Copy);
+			if(!((A1Node) node).hasOutcomeNodes()) { //THE COPY CREATES THEM WHEN IT NEEDS THEM
+				return a1Copy;
+			}
+			List<Node> outcomeNodes = ((A1Node) node).getOutcomeNodes();
+			for(Node outcome : outcomeNodes) {
+				Node outcomeCopy = sparePool.copy(outcome, parentCopy, a1Copy, shift);
+				copies.put(outcome, outcomeCopy);
+				a1Copy.addOutcome(outcomeCopy);
+			}
+			for(Node outcome : outcomeNodes) {
+				retainChildren(outcome, copies.get(outcome), shift, retained, copies, copiedChildren);
+			}
+			return a1Copy;
+		}
+		copy = sparePool.copy(node, parentCopy, null, shift);
+		copies.put(node, copy);
+		retainChildren(node, copy, shift, retained, copies, copiedChildren);
+		return copy;
+	}
+	
+	private void retainChildren(Node node, Node copy, int shift, Map<Node, List<Node>> retained, Map<Node, Node> copies,
+			Map<List<Node>, List<Node>> copiedChildren) {
+		List<Node> children = childNodes.get(node);
+		if(children == null) {
+			return;
+		}
+		List<Node> childCopies = copiedChildren.get(children);
+		if(childCopies == null) {
+			childCopies = new ArrayList<>(children.size());
+			copiedChildren.put(children, childCopies);
+			for(Node child : children) {
+				childCopies.add(retain(child, copy, shift, retained, copies, copiedChildren));
+			}
+		}
+		retained.put(copy, childCopies);
+		if(transpositions != null) {
+			transpositions.put(copy);
+		}
 	}
 	
 	private void goalRate() {
-		System.out.println("Hit goal: " + goal);
+		if(!mdp.getSearchConfig().isVerbose()) {
+			return;
+		}
+		System.out.println("Hit goal: " + goal.get());
 		System.out.println("--------");
-		System.out.println("Did not hit goal " + notGoal);
+		System.out.println("Did not hit goal " + notGoal.get());
+		if(budget.isStoppedEarly()) {
+			System.out.println("Decided after " + budget.getIterations() + " iterations, " + budget.getElapsedMillis() + " ms, about "
+					+ budget.getSavedIterations() + " iterations saved");
+		}
+	}
+	
+	/**
+	 * Whether the child of the root with the best average value stays the best whatever the remaining
+	 * iterations bring, by the rules of EarlyStopRules with the best rewards of getMaxReward.
+	 * 
+	 * @param remainingIterations an estimate of the iterations left in the budget, Long.MAX_VALUE when unknown
+	 */
+	@Override
+	public boolean isDecided(long remainingIterations) {
+		List<Node> children = childNodes.get(rootNode);
+		if(children == null) {
+			return false;
+		}
+		int count = children.size();
+		int[] visits = new int[count];
+		double[] valueSums = new double[count];
+		double[] maxRewards = new double[count];
+		for(int i = 0; i < count; i++) {
+			Node child = children.get(i);
+			visits[i] = child.getTotVisits();
+			valueSums[i] = child.getValue();
+			maxRewards[i] = getMaxReward(child);
+		}
+		double remainingVisits = (remainingIterations == Long.MAX_VALUE) ? Double.POSITIVE_INFINITY : (double) remainingIterations * rolloutsPerLeaf;
+		return EarlyStopRules.isDecided(count, visits, valueSums, maxRewards, remainingVisits,
+				mdp.getSearchConfig().getBudget().getSeparationConfidence());
 	}
 	
+	//THE CAR MOVES AT MOST CAR_MAX_MOVE CELLS A STEP, SO NO ROLLOUT BELOW node CAN GET MORE THAN THIS
+	private double getMaxReward(Node node) {
+		long state = (node instanceof A1Node) ? rootNode.getPackedState() : node.getPackedState();
+		int time = (node instanceof A1Node) ? rootNode.getTimeUnits() : node.getTimeUnits();
+		int distance = ps.getN() - PackedState.getPos(state);
+		int minSteps = Math.max(1, (distance + ProblemSpec.CAR_MAX_MOVE - 1) / ProblemSpec.CAR_MAX_MOVE);
+		return 100.0 / (time + minSteps);
+	}
 	
 	//THIS WAY OF IMPLEMENTING IT REQUIRES A "CONTAINER"-NODE FOR ALL A1-NODES.
+	//BELOW AN A1-NODE ONE OUTCOME IS SAMPLED, THE CALLER ADDS THE RETURNED NODE TO ITS PATH.
 	private Node selectNode(Node node) {
 		if(node instanceof A1Node) {
-			return selectA1Node((A1Node) node);
+			return sampleOutcome((A1Node) node);
 		}
 		List<Node> children = childNodes.get(node);
 		double bestUCB = -1;
 		Node bestNode = null;
 		for(Node child : children) {
-			if(child.getUCB() > bestUCB) {
+			if(pruning && !isFeasible(child)) { //ONLY AFTER THE ROOT HAS ADVANCED LATER THAN THE TREE EXPECTED
+				continue;
+			}
+			double ucb = getUCB(child, node);
+			if(ucb > bestUCB) {
 				bestNode = child;
-				bestUCB = child.getUCB();
+				bestUCB = ucb;
 			}
 		}
-		return bestNode;
+		return (bestNode != null) ? bestNode : children.get(0);
 	}
 	
-	private Node selectA1Node(A1Node node) {
-		List<Node> outcomeNodes = node.getOutcomeNodes();
-		double bestUCB = -1;
-		Node bestNode = null;
-		for(Node outcomeNode : outcomeNodes) {
-			List<Node> children = childNodes.get(outcomeNode);
-			for(Node child : children) {
-				if(child.getUCB() > bestUCB) {
-					bestNode = child;
-					bestUCB = child.getUCB();
-				}
-			}
-		}
-		return bestNode;
+	//AN A1 NODE HAS THE STATE IT MOVES FROM AT THE TIME OF ITS OUTCOMES, A MOVE TAKES THEM AT MOST ONE STEP CLOSER TO THE GOAL
+	private boolean isFeasible(Node node) {
+		int time = (node instanceof A1Node) ? node.getTimeUnits() - 1 : node.getTimeUnits();
+		return bounds.isFeasible(node.getPackedState(), time);
 	}
 	
+	//ONE OUTCOME PER VISIT, AS LIKELY AS IT IS IN THE SIMULATOR. HOW GOOD IT IS DOES NOT MATTER, THE CAR CAN NOT CHOOSE IT.
+	private Node sampleOutcome(A1Node node) {
+		return node.getOutcomeOfMove(ownSim.sampleMoveIndex(node.getPackedState()));
+	}
+	
+	//THE EXPLORATION TERM USES THE VISITS THE PARENT HAS NOW. THE UCB A NODE STORES IS FROM ITS OWN LAST UPDATE, SO THE FIRST
+	//CHILD UPDATED WHILE ITS PARENT HAD ONE VISIT WOULD KEEP NO EXPLORATION AT ALL AND NEVER BE TRIED AGAIN WHEN EVERY VALUE IS 0.
+	//WITH A TRANSPOSITION TABLE A CHILD CAN HAVE SEVERAL PARENTS, IT IS THE ONE IT IS SELECTED FROM.
+	private double getUCB(Node child, Node parent) {
+		return child.getUCB(parent);
+	}
+	
+	/**
+	 * Adds the children of a decision node, an outcome of an A1 node included. With several search threads
+	 * only the thread that claims the node takes its children from the pool, the others wait for them, so
+	 * no node is taken from the pool that does not end up in the tree.
+	 * 
+	 * @return the first child, which is the A1 node
+	 */
 	public Node expand(Node node){
 		if(node instanceof A1Node) {
-			List<Node> subNodes = ((A1Node) node).getOutcomeNodes();
-			Node firstNode = subNodes.get(0);
-			for (Node subNode : subNodes) {
-				expand(subNode);
-			}
-			return firstNode;
+			throw new IllegalArgumentException("An A1 node is not expanded, its outcomes are");
 		}
 			else {
-				List<Node> nodes = new ArrayList<>();
-				for(Action action : actionSpace) {
-					if(action.getText().equals("A1")){
-						double[] moveProbs = ownSim.getMoveProbs(node);
-		 				A1Node a1node = new A1Node(node.getNodeState(), node, action, mdp, moveProbs);
-		 				nodes.add(a1node);
+				if(!node.claimExpansion()) { //ANOTHER THREAD IS EXPANDING THE NODE, WHICH TAKES NO LONGER THAN A FEW STEPS
+					List<Node> expanded;
+					while((expanded = childNodes.get(node)) == null) {
+						Thread.yield();
+					}
+					return expanded.get(0);
+				}
+				if(transpositions != null) {
+					List<Node> shared = findTransposition(node);
+					if(shared != null) {
+						childNodes.put(node, shared);
+						return shared.get(0);
 					}
-					else 
-					{
-						Node resultNode = ownSim.step(action, node);
-						if(!(node.getNodeState().toString().equals(resultNode.getNodeState().toString()))) { //AVOID ADDING NODES THAT "EQUAL" YOURSELF.
-							nodes.add(resultNode);
+				}
+				List<Node> nodes = new ArrayList<>(actionSpace.size());
+				long state = node.getPackedState();
+				nodes.add(nodePool.obtainA1(state, node, actionSpace.get(ActionSpace.MOVE),
+						ownSim.getMoveProbabilityOffset(state), ownSim.getFuelConsumption(state)));
+				int pruned = 0;
+				for(int a = ActionSpace.MOVE + 1; a < actionSpace.size(); a++) {
+					if(!actionSpace.isNoOp(a, state)) { //AVOID ADDING NODES THAT "EQUAL" YOURSELF.
+						long nextState = actionSpace.step(a, state);
+						if(pruning && !bounds.isFeasible(nextState, node.getTimeUnits() + 1)) { //THE A1 NODE IS ALWAYS KEPT
+							pruned++;
+							continue;
 						}
-						
+						nodes.add(nodePool.obtain(nextState, node, actionSpace.get(a), false, null));
 					}
 				}
 				childNodes.put(node, nodes);
+				budget.addNodes(nodes.size());
+				if(metrics != null) {
+					metrics.addPrunedChildren(pruned);
+				}
 				
 				return nodes.get(0);
 			}
 	}
 	
-	private boolean rollout(Node node) {
+	//A NODE WITH THE SAME STATE AND TIME AS AN EXPANDED ONE GETS ITS CHILDREN, SO THEIR STATISTICS ARE MERGED.
+	//ONLY CHILDREN OF A NODE THAT IS NOT EARLIER THAN THIS ONE ARE SHARED, THAT WAY A PATH NEVER LEADS BACK TO THE SAME CHILDREN.
+	private List<Node> findTransposition(Node node) {
+		Node canonical = transpositions.getCanonical(node);
+		if(canonical == node || canonical.getTimeUnits() < node.getTimeUnits()) {
+			return null;
+		}
+		return childNodes.get(canonical);
+	}
+	
+	/**
+	 * @param path the nodes selected from the root down to node
+	 * @param feasible false when node can not reach the goal any more, every rollout then gets 0 without being played
+	 */
+	private boolean rollout(Node node, List<Node> path, boolean feasible) {
+		double[] rewards = feasible ? simulateLeaf(node) : new double[rolloutsPerLeaf];
+		if(!feasible && metrics != null) {
+			metrics.addPrunedDescent();
+		}
+		long simulatedTime = now();
 		
-		if(!(node instanceof A1Node)) {
-			double timeSpent = node.getTimeUnits();
-			double timeAllowed = ps.getMaxT();
-			Node dummyNode = node;
-			
-			while(!(timeSpent >= timeAllowed || ownSim.isGoalNode(dummyNode))) {
-				//int number = aRandomInt(0,6); //QUICK FIX HEURISTIC
-				//Action action = (number == 0) ? actionSpace.get(0) : actionSpace.get(aRandomInt(1,actionSpace.size())); //actionSpace.get(aRandomInt(0, actionSpace.size()));
-				Action action = rolloutHeuristic(dummyNode);
-				Node resultingNode = ownSim.step(action, dummyNode);
-				dummyNode = resultingNode;
-				timeSpent = dummyNode.getTimeUnits()+1;
+		boolean wasGoal = false;
+		for(double reward : rewards) {
+			if(transpositions == null) {
+				backPropagate(node, reward);
 			}
-			
-			
-			double reward = calculateReward(dummyNode);
-			
-			
-			backPropagate(node, reward);
-			
-			return reward > 0;
+			else {
+				backPropagate(path, path.size(), reward);
+			}
+			wasGoal |= reward > 0;
 		}
-		else {
-			return rolloutA1((A1Node) node);
+		if(metrics != null) {
+			metrics.addBackprop(now() - simulatedTime);
 		}
 		
-		
+		return wasGoal;
 	}
 	
-	private boolean rolloutA1(A1Node a1Node) {
-		
-		for(Node node : a1Node.getOutcomeNodes()) {
-			double timeSpent = node.getTimeUnits();
-			double timeAllowed = ps.getMaxT();
-			Node dummyNode = node;
-			
-			while(!(timeSpent >= timeAllowed || ownSim.isGoalNode(dummyNode))) {
-				
-				 														//				int number = aRandomInt(0,6); //QUICK FIX HEURISTIC
-				Action action = rolloutHeuristic(dummyNode);			//				Action action = (number == 0) ? actionSpace.get(0) : actionSpace.get(aRandomInt(1,actionSpace.size()));  //actionSpace.get(aRandomInt(0, actionSpace.size()));
-				Node resultingNode = ownSim.step(action, dummyNode);
-				dummyNode = resultingNode;
-				timeSpent = dummyNode.getTimeUnits()+1;
+	/**
+	 * Runs rolloutsPerLeaf rollouts from the node without touching the tree. When a leaf pool is configured
+	 * they are forked onto it and joined before returning.
+	 */
+	private double[] simulateLeaf(Node node) {
+		double[] rewards = new double[rolloutsPerLeaf];
+		if(leafPool == null) {
+			for(int i = 0; i < rewards.length; i++) {
+				rewards[i] = simulate(node);
 			}
-			node.updateStat(calculateReward(dummyNode));
+			return rewards;
 		}
-		
-		a1Node.updateA1Node();
-		double reward = a1Node.getValue();
-		backPropagate(a1Node.getParentNode(), reward);
-		return reward > 0;
+		List<ForkJoinTask<Double>> rollouts = new ArrayList<>(rewards.length);
+		for(int i = 0; i < rewards.length; i++) {
+			rollouts.add(leafPool.submit(() -> simulate(node)));
+		}
+		for(int i = 0; i < rewards.length; i++) {
+			rewards[i] = rollouts.get(i).join();
+		}
+		return rewards;
 	}
 	
+	/**
+	 * Plays the rollout heuristic from node until the goal or maxT without touching the tree
+	 * 
+	 * @return the reward of where it ended
+	 */
+	public double simulate(Node node) {
+		return simulate(node.getPackedState(), node.getTimeUnits(), node.getAction());
+	}
 	
+	/**
+	 * Plays the rollout heuristic from a packed state, see RolloutPolicy.simulate
+	 * 
+	 * @param timeUnits the time the state is reached at
+	 * @param previousAction the action that led to the state, or null
+	 * @return the reward of where it ended
+	 */
+	public double simulate(long state, int timeUnits, Action previousAction) {
+		return rolloutPolicy.simulate(state, timeUnits, previousAction, metrics);
+	}
+	
+
 	//CALCULATES THE PROBABILITY OF MOVING FORWARD FROM A GIVEN NODE.
 	public double calculateProbMove(Node node) {
-		
-		double[] moveProbs = ownSim.getMoveProbs(node);
-		
-		double sum = 0;
-		for(int i = 5; i < 10; i++) {
-			sum += moveProbs[i];
-		}
-		return sum;
+		return rolloutPolicy.calculateProbMove(node.getPackedState());
 	}
 	
 	public Action rolloutHeuristic(Node node) {
-		double sum = calculateProbMove(node);
-		if(sum > 0.5) {
-			return actionSpace.get(0);
-		}
-		Action preferredAction = calculatePreferredAction(node, sum);
-		return preferredAction;
+		return rolloutHeuristic(node.getPackedState(), node.getAction());
 	}
-
 	
-	
-	private Action calculatePreferredAction(Node node, double sum) {
-		double oldSumMove = sum;
-		Node temporaryNode;
-		Action prevAction = node.getAction();
-		Action temporaryAction = actionSpace.get(0);
-		Action bestAction = temporaryAction;
-		double temporaryBestSumMove = oldSumMove;
-		
-//		//IF YOUR PREVIOUS ACTION WAS NOT TO MOVE FORWARD, THIS MEANS THAT YOU MUST TRY TO MOVE FORWARD NOW.
-//		
-//		if(!(prevAction == null) && !(prevAction.equals(actionSpace.get(0)))) {
-//			return actionSpace.get(0);
-//		}
-		
-		
-		//TRY CHANGE CAR (A2)
-		LinkedHashMap<String, double[]> carMoveProb = ps.getCarMoveProbability();
-		for(int i = 1; i < ps.getCT() + 1; i++) {
-			temporaryAction = actionSpace.get(i);
-			String car = temporaryAction.getCarType();
-			double[] moveProb = carMoveProb.get(car);
-			double probMoveForward = 0;
-			for(int j = 5; j < 10; j++) {
-				probMoveForward += moveProb[j];
-			}
-			if(probMoveForward > temporaryBestSumMove) {
-				if(prevAction == null) {
-					temporaryBestSumMove = probMoveForward;
-					bestAction = temporaryAction;
-					continue;
-				}
-				if(!(prevAction.equals(temporaryAction))) {
-					temporaryBestSumMove = probMoveForward;
-					bestAction = temporaryAction; 	
-				}
-			}
-		}
-		
-		//TRY CHANGE DRIVER (A3)
-		
-		LinkedHashMap<String, double[]> driverMoveProb = ps.getDriverMoveProbability();
-		for(int i = ps.getCT()+1; i < ps.getCT() + ps.getDT()+1; i++) {
-			temporaryAction = actionSpace.get(i);
-			String driver = temporaryAction.getDriverType();
-			double[] moveProb = driverMoveProb.get(driver);
-			double probMoveForward = 0;
-			for(int j = 5; j < 10; j++) {
-				probMoveForward += moveProb[j];
-			}
-			if(probMoveForward > temporaryBestSumMove) {
-				if(prevAction == null) {
-					temporaryBestSumMove = probMoveForward;
-					bestAction = temporaryAction;
-					continue;
-				}
-				if(!(prevAction.equals(temporaryAction))) {
-					temporaryBestSumMove = probMoveForward;
-					bestAction = temporaryAction; 	
-				}	
-			}
-		}
-		
-		
-		//TRY CHANGE TIRES (A4)
-		LinkedHashMap<Tire, double[]> tireMoveProb = ps.getTireModelMoveProbability();
-		for(int i = ps.getCT()+ ps.getDT() + 1; i < ps.getCT() + ps.getDT()+ 4 + 1 ;i++) {
-			temporaryAction = actionSpace.get(i);
-			Tire tire = temporaryAction.getTireModel();
-			double[] moveProb = tireMoveProb.get(tire);
-			double probMoveForward = 0;
-			for(int j = 5; j < 10; j++) {
-				probMoveForward += moveProb[j];
-			}
-			if(probMoveForward > temporaryBestSumMove) {
-				if(prevAction == null) {
-					temporaryBestSumMove = probMoveForward;
-					bestAction = temporaryAction;
-					continue;
-				}
-				if(!(prevAction.equals(temporaryAction))) {
-					temporaryBestSumMove = probMoveForward;
-					bestAction = temporaryAction; 	
-				}	
-			}
-		}
-		
-		
-		//TRY ADD FUEL?? :) (A5) Only level 2 and up
-		
-		if(ps.getLevel().getLevelNumber() > 1) {
-			temporaryAction = actionSpace.get(ps.getCT() + ps.getDT()+ 4 + 1);
-			temporaryNode = ownSim.step(temporaryAction, node);
-			double newMoveSum = calculateProbMove(temporaryNode);
-			if(newMoveSum > temporaryBestSumMove) {
-				if(prevAction == null) {
-					temporaryBestSumMove = newMoveSum;
-					bestAction = temporaryAction;
-				}
-				else{
-					if((!(prevAction.equals(temporaryAction)))) {
-						temporaryBestSumMove = newMoveSum;
-						bestAction = temporaryAction; 	
-					}	
-				}
-			}
-		}
-		
-		//TRY CHANGE PRESSURE (A6) Only level 2 and up
-		
-		if(ps.getLevel().getLevelNumber() > 1) {
-			for(int i = ps.getCT() + ps.getDT()+ 4 + 2; i < ps.getCT() + ps.getDT()+ 4 + 2 + 3; i++) {
-				temporaryAction = actionSpace.get(i);
-				temporaryNode = ownSim.step(temporaryAction, node);
-				double newMoveSum = calculateProbMove(temporaryNode);
-				if(newMoveSum > temporaryBestSumMove) {
-					if(prevAction == null) {
-						temporaryBestSumMove = newMoveSum;
-						bestAction = temporaryAction;
-					}
-					else{
-						if((!(prevAction.equals(temporaryAction)))) {
-							temporaryBestSumMove = newMoveSum;
-							bestAction = temporaryAction; 	
-						}	
-					}
-				}
-			}
-		}
-		//TRY CHANGE CAR AND DRIVER ??? FOR LEVEL 4!! FOR EACH CAR LOOP THROUGH EACH DRIVER AND MULTIPLY THEIR PROBABILITIES FOR MOVING FORWARD TOGETHER INTO A carDriverMoveProb-list.
-		if(ps.getLevel().getLevelNumber() > 3) {
-			for(int i = ps.getCT() + ps.getDT()+ 4 + 2 + 3; i < ps.getCT() + ps.getDT()+ 4 + 2 + 3 + ps.getCT() * ps.getDT(); i++) {
-				temporaryAction = actionSpace.get(i);
-				temporaryNode = ownSim.step(temporaryAction, node);
-				double newMoveSum = calculateProbMove(temporaryNode);
-				if(newMoveSum > temporaryBestSumMove) {
-					if(prevAction == null) {
-						temporaryBestSumMove = newMoveSum;
-						bestAction = temporaryAction;
-					}
-					else{
-						if((!(prevAction.equals(temporaryAction)))) {
-							temporaryBestSumMove = newMoveSum;
-							bestAction = temporaryAction; 	
-						}	
-					}
-				}
-			}
-		}
-		
-		return bestAction;
+	/**
+	 * @param prevAction the action that led to the state, or null
+	 */
+	public Action rolloutHeuristic(long state, Action prevAction) {
+		return rolloutPolicy.rolloutHeuristic(state, prevAction);
 	}
+	
 
 	public double calculateReward(Node node) {
-		if(ownSim.isGoalNode(node)) {
-			double timeSpent = node.getTimeUnits();
-			if(timeSpent > ps.getMaxT()) {
-				return 0;
-			}
-			else {
-				return 100/timeSpent;
-			}
-		}
-		else {
-			return 0;
-		}
+		return rolloutPolicy.calculateReward(node.getPackedState(), node.getTimeUnits());
 	}
 	
+
 	public void backPropagate(Node node, double reward) {
 		
 		if(node.getParentNode() == null) {
@@ -447,6 +732,20 @@ public class MCTS {
 		
 	}
 	
+	//WITH A TRANSPOSITION TABLE THE PARENT POINTERS LEAD UP THE PATH A NODE WAS FIRST CREATED ON,
+	//SO THE REWARD IS INSTEAD PASSED UP THE PATH THAT WAS ACTUALLY SELECTED, path[0] TO path[end - 1].
+	private void backPropagate(List<Node> path, int end, double reward) {
+		for(int i = end - 1; i >= 0; i--) {
+			Node node = path.get(i);
+			if(node instanceof A1Node) {
+				((A1Node) node).updateA1Node();
+			}
+			else {
+				node.updateStat(reward);
+			}
+		}
+	}
+	
 	/** I'm a helper method */
     private static int aRandomInt(int min, int max) {
 
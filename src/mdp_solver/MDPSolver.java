@@ -4,6 +4,7 @@ package mdp_solver;
 import java.util.ArrayList;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 
 
@@ -12,18 +13,40 @@ import simulator.*;
 
 public class MDPSolver {
 	
+	/** The rollout values may take at most the max heap divided by this **/
+	private static final int ROLLOUT_VALUE_HEAP_SHARE = 4;
+	
 	private ProblemSpec ps;
 	private Level level;
-	private List<Action> actionSpace;
+	private ActionSpace actionSpace;
 	private Simulator sim;
 	private int actionCounter;
+	private SearchConfig config;
+	private ForkJoinPool leafPool;
+	private AliasTable moveAliasTable;
+	private String outPutFileName;
+	private int searches;
+	private RolloutValues rolloutValues;
+	private boolean rolloutValuesSolved;
+	/** Time spent solving shared tables that no search has reported yet **/
+	private long setupMillis;
+	private FeasibilityBounds feasibilityBounds;
 	
 	public MDPSolver(ProblemSpec ps, String outPutFileName) {
+		this(ps, outPutFileName, new SearchConfig());
+	}
+	
+	public MDPSolver(ProblemSpec ps, String outPutFileName, SearchConfig config) {
 		this.ps = ps;
+		this.config = config;
 		level = ps.getLevel();
-		actionSpace = generateActionSpace();
+		actionSpace = new ActionSpace(ps, generateActionSpace());
 		sim = new Simulator(ps, outPutFileName);
+		this.outPutFileName = outPutFileName;
 		actionCounter = 0;
+		if(config.isAliasSampling()) {
+			moveAliasTable = new AliasTable(ps.getMoveProbabilities(), ProblemSpec.CAR_MOVE_RANGE);
+		}
 	}
 	
 	/**
@@ -100,35 +123,160 @@ public class MDPSolver {
 
 	
 	/**
-	 * Method that takes a state as input and add a list of all states possible to reach from that state as a child of that state.
-	 * @param parentState
+	 * Plays one episode in the simulator with the configured planner. The simulator writes the steps to the output file.
+	 * 
+	 * @return whether the goal was reached
 	 */
-	
-	public void solve(){
+	public boolean solve(){
 		sim.reset();
-		Node currentRootNode = new Node(State.getStartState(ps.getFirstCarType(), ps.getFirstDriver(), ps.getFirstTireModel()), null, null, this, false, null);
+		boolean goalReached = false;
+		State startState = State.getStartState(ps.getFirstCarType(), ps.getFirstDriver(), ps.getFirstTireModel());
 		int max = ps.getMaxT();
-		while(actionCounter < max) {
-			MCTS iteration = new MCTS(ps, actionSpace,this, currentRootNode);
-			Action a = iteration.MCTSIteration();
-			if(a==null) {
-				break;
+		//ONE PLANNER FOR THE WHOLE EPISODE, THE SEARCH TREES ARE KEPT BETWEEN STEPS
+		Planner planner = createPlanner(startState);
+		try {
+			while(actionCounter < max) {
+				Action a = planner.nextAction();
+				if(a==null) {
+					break;
+				}
+				State resultState = sim.step(a);
+				if(resultState == null) {
+					break;
+				}
+				if(config.isVerbose()) {
+					System.out.println(resultState);
+					System.out.println(a.getText() + "\n");
+				}
+				goalReached = sim.isGoalState(resultState);
+				planner.advance(a, resultState, sim.getSteps());
 			}
-			State resultState = sim.step(a);
-			if(resultState == null) {
-				break;
+		} finally {
+			planner.shutdown();
+			if(leafPool != null) {
+				leafPool.shutdownNow();
+				leafPool = null;
 			}
-			System.out.println(resultState);
-			System.out.println(a.getText() + "\n");
-			currentRootNode = new Node(resultState, currentRootNode, a, this, false, null);
-			currentRootNode.setTimeUnits(sim.getSteps());
-		}		
+		}
+		return goalReached;
+	}
+	
+	private Planner createPlanner(State startState) {
+		if(config.getLeafThreads() > 1) {
+			leafPool = new ForkJoinPool(config.getLeafThreads());
+		}
+		switch(config.getMode()) {
+			case ROOT_PARALLEL:
+				return new RootParallelMCTS(ps, actionSpace, this, startState, config.getThreads());
+			case TREE_PARALLEL:
+				return new MCTS(ps, actionSpace, this, new Node(startState, null, null, this, false, null),
+						new OwnSimulator(ps, this, null), config.getThreads());
+			case VALUE_ITERATION:
+				return new ValueIteration(ps, actionSpace, new OwnSimulator(ps, this), startState, config.isVerbose());
+			case POLICY_ITERATION:
+				return new PolicyIteration(ps, actionSpace, new OwnSimulator(ps, this), startState, config.isVerbose());
+			case COMPACT:
+				return new CompactMCTS(ps, actionSpace, this, startState, new OwnSimulator(ps, this));
+			default:
+				//ROLLOUTS FORKED ONTO THE LEAF POOL SAMPLE FROM THEIR OWN THREAD'S RANDOM
+				OwnSimulator ownSim = (leafPool == null) ? new OwnSimulator(ps, this) : new OwnSimulator(ps, this, null);
+				return new MCTS(ps, actionSpace, this, new Node(startState, null, null, this, false, null), ownSim);
+		}
 	}
 	
 	public ProblemSpec getProblemSpec() {
 		return ps;
 	}
 	
+	/**
+	 * @return every action of the level, A1 first
+	 */
+	public ActionSpace getActionSpace() {
+		return actionSpace;
+	}
+	
+	public SearchConfig getSearchConfig() {
+		return config;
+	}
+	
+	/**
+	 * The lower bounds on the time to the goal the search prunes with, made the first time they are asked for
+	 * 
+	 * @return null when the search config turns pruning off
+	 */
+	public synchronized FeasibilityBounds getFeasibilityBounds() {
+		if(!config.isFeasibilityPruning()) {
+			return null;
+		}
+		if(feasibilityBounds == null) {
+			feasibilityBounds = new FeasibilityBounds(ps, new OwnSimulator(ps, this));
+		}
+		return feasibilityBounds;
+	}
+	
+	/**
+	 * The exact values of the rollouts, solved the first time they are asked for and shared by every search of the episode
+	 * 
+	 * The table has to fit in the config and in a quarter of the heap, so a small -Xmx falls back to sampled
+	 * rollouts instead of running out of memory. Solving it is not counted by the budget of the first search,
+	 * its time is reported in the metrics of that search as setupMillis.
+	 * 
+	 * @return null when the rollouts are sampled, because they are turned off or need more memory than is allowed
+	 */
+	public synchronized RolloutValues getRolloutValues() {
+		if(rolloutValuesSolved) {
+			return rolloutValues;
+		}
+		rolloutValuesSolved = true;
+		if(config.getRolloutValueMaxBytes() == 0) {
+			return null;
+		}
+		long startTime = System.currentTimeMillis();
+		OwnSimulator ownSim = new OwnSimulator(ps, this);
+		RolloutValues values = new RolloutValues(ps, actionSpace, ownSim, new RolloutPolicy(ps, actionSpace, ownSim));
+		long maxBytes = Math.min(config.getRolloutValueMaxBytes(), Runtime.getRuntime().maxMemory() / ROLLOUT_VALUE_HEAP_SHARE);
+		if(values.getRequiredBytes() > maxBytes) {
+			if(config.isVerbose()) {
+				System.out.println("Rollout values need " + (values.getRequiredBytes() >> 20) + " MB, more than the "
+						+ (maxBytes >> 20) + " MB allowed, the rollouts are sampled");
+			}
+			return null;
+		}
+		values.solve();
+		setupMillis += System.currentTimeMillis() - startTime;
+		if(config.isVerbose()) {
+			System.out.println("Rollout values: " + (values.getRequiredBytes() >> 20) + " MB, " + (System.currentTimeMillis() - startTime) + " ms");
+		}
+		rolloutValues = values;
+		return rolloutValues;
+	}
+	
+	/**
+	 * @return the pool that leaf rollouts are forked onto, or null when rollouts run on the searching thread
+	 */
+	public ForkJoinPool getLeafPool() {
+		return leafPool;
+	}
+	
+	/**
+	 * @return alias tables over the move probabilities of the problem spec, or null when moves are sampled by the cumulative scan
+	 */
+	public AliasTable getMoveAliasTable() {
+		return moveAliasTable;
+	}
+	
+	/**
+	 * Appends the metrics of a search to the metrics file of the search config, as a line of JSON that names
+	 * the output file of this episode and counts the searches in it
+	 * 
+	 * @param timeUnits the time of the state the search was made from
+	 */
+	public synchronized void recordMetrics(SearchMetrics metrics, int timeUnits) {
+		metrics.setSetupMillis(setupMillis);
+		setupMillis = 0;
+		SearchMetrics.append(config.getMetricsFile(), metrics.toJson(outPutFileName, searches++, timeUnits));
+	}
+	
 	public int getSlipRecoveryTime() {
 		return ps.getSlipRecoveryTime();
 	}
@@ -1,4 +1,7 @@
 package mdp_solver;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 import problem.*;
 import simulator.*;
 
@@ -14,13 +17,21 @@ import simulator.*;
 
 public class Node {
 	
-	protected State nodeState;
+	//THE STATISTICS ARE UPDATED WITHOUT LOCKS SO SEVERAL THREADS CAN SEARCH THE SAME TREE
+	private static final AtomicIntegerFieldUpdater<Node> VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "totVisits");
+	private static final AtomicIntegerFieldUpdater<Node> VIRTUAL_LOSS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "virtualLoss");
+	private static final AtomicLongFieldUpdater<Node> VALUE = AtomicLongFieldUpdater.newUpdater(Node.class, "valueBits");
+	private static final AtomicIntegerFieldUpdater<Node> EXPANSION = AtomicIntegerFieldUpdater.newUpdater(Node.class, "expansionClaimed");
+	
+	protected long state; //packed, see PackedState
 	protected Node parentNode;
-	protected int totVisits;
-	protected double value;
+	protected volatile int totVisits;
+	private volatile long valueBits; //the summed value, stored as the bits of a double so it can be added to atomically
+	protected volatile int virtualLoss; //number of threads currently searching below this node
+	private volatile int expansionClaimed; //1 once a thread has started adding the children of this node
 	protected final static double C = Math.sqrt(5); //The discountfactor to be used in UpperConfidenceBound 
 	protected final static int M = 100000000; //Large number to represent infinity
-	protected double UCB;
+	protected volatile double UCB;
 	protected Action action; //the predecessor´s action
 	protected int timeUnits;
 	protected MDPSolver mdp;
@@ -28,18 +39,51 @@ public class Node {
 	protected A1Node A1node;
 	
 	public Node(State nodeState, Node parentNode, Action action, MDPSolver mdp, boolean isSubNode, A1Node a1node) {
-		this.nodeState = nodeState;
+		this(PackedState.pack(nodeState, mdp.getProblemSpec()), parentNode, action, mdp, isSubNode, a1node);
+	}
+	
+	public Node(long state, Node parentNode, Action action, MDPSolver mdp, boolean isSubNode, A1Node a1node) {
+		init(state, parentNode, action, mdp, isSubNode, a1node);
+	}
+	
+	/**
+	 * Sets every field the way the constructor does, so a NodePool can hand the node out again.
+	 */
+	void init(long state, Node parentNode, Action action, MDPSolver mdp, boolean isSubNode, A1Node a1node) {
+		this.state = state;
 		this.parentNode = parentNode;
 		totVisits = 0;
-		value = 0;
+		valueBits = Double.doubleToRawLongBits(0);
+		virtualLoss = 0;
+		expansionClaimed = 0;
 		UCB = M;
 		this.action = action;
 		this.mdp = mdp;
 		this.isSubNode = isSubNode;
 		this.A1node = a1node;
+		timeUnits = 0;
 		setTimeUnits();
 	}
 	
+	/**
+	 * Makes the node a copy of other with its statistics, below a new parent and with its time shifted.
+	 * No thread may be searching below other.
+	 */
+	void copy(Node other, Node parentNode, A1Node a1node, int shift) {
+		state = other.state;
+		this.parentNode = parentNode;
+		totVisits = other.totVisits;
+		valueBits = other.valueBits;
+		virtualLoss = 0;
+		expansionClaimed = 0; //THE CHILDREN THAT ARE KEPT ARE COPIED WITH IT, WITHOUT THEM IT IS EXPANDED AGAIN
+		UCB = other.UCB;
+		action = other.action;
+		mdp = other.mdp;
+		isSubNode = other.isSubNode;
+		A1node = a1node;
+		timeUnits = other.timeUnits + shift;
+	}
+	
 	public A1Node getA1Node() {
 		return A1node;
 	}
@@ -57,28 +101,42 @@ public class Node {
 	}
 	
 	public double getAvgValue() {
-		return this.value/this.totVisits;
+		return getValue()/this.totVisits;
 	}
 	
 	public void setTimeUnits(int units) {
 		this.timeUnits = units;
 	}
 	
+	public void shiftTimeUnits(int shift) {
+		this.timeUnits += shift;
+	}
+	
+	/**
+	 * Detaches the node from the tree above it so it can be used as the root of a reused search tree.
+	 */
+	public void makeRoot() {
+		parentNode = null;
+		isSubNode = false;
+		A1node = null;
+	}
+	
 	public void setTimeUnits() {
 		if(parentNode == null) {
 			timeUnits = 0;
 		}
 		else {
-			timeUnits += parentNode.getTimeUnits() + 1;
-			if(nodeState.isInSlipCondition()) {
-				timeUnits += mdp.getSlipRecoveryTime();
-				nodeState = nodeState.changeSlipCondition(false);
+			int duration = 1;
+			if(PackedState.isInSlipCondition(state)) {
+				duration = OwnSimulator.getMoveDuration(mdp.getProblemSpec(), ProblemSpec.SLIP);
+				state = PackedState.changeSlipCondition(state, false);
 			}
-			if(nodeState.isInBreakdownCondition()) {
-				timeUnits += mdp.getRepairTime();
-				nodeState = nodeState.changeBreakdownCondition(false);
+			if(PackedState.isInBreakdownCondition(state)) {
+				duration = OwnSimulator.getMoveDuration(mdp.getProblemSpec(), ProblemSpec.BREAKDOWN);
+				state = PackedState.changeBreakdownCondition(state, false);
 			}
-			
+			timeUnits += parentNode.getTimeUnits() + duration;
+
 		}
 	}
 
@@ -87,11 +145,18 @@ public class Node {
 	}
 
 	public void updateTotVisits() {
-		this.totVisits += 1;
+		VISITS.incrementAndGet(this);
 	}
 
 	public double getValue() {
-		return value;
+		return Double.longBitsToDouble(valueBits);
+	}
+	
+	/**
+	 * Overwrites the summed value, used by nodes whose value is derived from other nodes.
+	 */
+	protected void storeValue(double value) {
+		valueBits = Double.doubleToRawLongBits(value);
 	}
 	
 	public void updateStat(double value) {
@@ -101,11 +166,45 @@ public class Node {
 	}
 
 	public void setValue(double value) {
-		this.value += value;
+		long current;
+		long updated;
+		do {
+			current = valueBits;
+			updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value);
+		} while(!VALUE.compareAndSet(this, current, updated));
+	}
+	
+	/**
+	 * Claims adding the children of this node for the calling thread
+	 * 
+	 * @return false when another thread has claimed it already
+	 */
+	boolean claimExpansion() {
+		return EXPANSION.compareAndSet(this, 0, 1);
+	}
+	
+	/**
+	 * Marks that a thread is searching below this node. Until it is removed again the node looks like it has
+	 * an extra visit with no reward, which steers other threads onto different branches.
+	 */
+	public void addVirtualLoss() {
+		VIRTUAL_LOSS.incrementAndGet(this);
+	}
+	
+	public void removeVirtualLoss() {
+		VIRTUAL_LOSS.decrementAndGet(this);
 	}
 
+	/**
+	 * Unpacks the state of the node. Only meant for the boundary to the real simulator and for printing,
+	 * the search itself works on getPackedState().
+	 */
 	public State getNodeState() {
-		return nodeState;
+		return PackedState.toState(state, mdp.getProblemSpec());
+	}
+	
+	public long getPackedState() {
+		return state;
 	}
 
 	public Node getParentNode() {
@@ -117,13 +216,22 @@ public class Node {
 	}
 	
 	public double calculateUCB() {
-	 	if(totVisits == 0) {
+		return calculateUCB(0);
+	}
+	
+	private double calculateUCB(int losses) {
+		return calculateUCB(losses, parentNode);
+	}
+	
+	private double calculateUCB(int losses, Node parent) {
+		int visits = totVisits + losses;
+	 	if(visits == 0) {
 			return M;
 		}
-		double avgValue = value/totVisits;
+		double avgValue = getValue()/visits;
 		double explorationValue = 0;
-		if(parentNode!=null) {
-			explorationValue = C * Math.sqrt((Math.log(parentNode.getTotVisits())/totVisits));
+		if(parent!=null) {
+			explorationValue = C * Math.sqrt((Math.log(parent.getTotVisits())/visits));
 		}
 		
 		return avgValue + explorationValue;
@@ -134,9 +242,21 @@ public class Node {
 	}
 	
 	public double getUCB() {
+		int losses = virtualLoss;
+		if(losses > 0) {
+			return calculateUCB(losses);
+		}
 		return UCB;
 	}
 	
+	/**
+	 * The UCB seen from the given parent. A node shared through a transposition table has more than one
+	 * parent, the exploration term then has to use the visits of the parent it is selected from.
+	 */
+	public double getUCB(Node parent) {
+		return calculateUCB(virtualLoss, parent);
+	}
+	
 	/**
      * Return the step instance as a string in the format specified by assignment 2
      * spec.
@@ -154,6 +274,7 @@ public class Node {
             sb.append(timeUnits);
         }
         // add state tuple
+        State nodeState = getNodeState();
         sb.append(";(");
         sb.append(nodeState.getPos()).append(",");
         sb.append(booleanToInt(nodeState.isInSlipCondition())).append(",");
@@ -0,0 +1,169 @@
+package mdp_solver;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import problem.Action;
+
+/**
+ * An arena of Node and A1Node objects for one search tree. The nodes are handed out in order and reset()
+ * takes them all back in O(1), so after the first few decisions the search allocates no new nodes and
+ * its memory use stays flat. A node is only created the first time its slot is used, after that the
+ * object is set up again with Node.init.
+ *
+ * Nothing may hold on to a node after reset(). MCTS keeps the part of the tree it reuses by copying it
+ * into a second pool before resetting the first (see MCTS.advanceRoot).
+ *
+ * Nodes can be obtained from several threads at the same time.
+ */
+public class NodePool {
+
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final MDPSolver mdp;
+	private final Arena<Node> nodes;
+	private final Arena<A1Node> a1Nodes;
+
+	public NodePool(MDPSolver mdp) {
+		this.mdp = mdp;
+		nodes = new Arena<>(new Node[0][]);
+		a1Nodes = new Arena<>(new A1Node[0][]);
+	}
+
+	/**
+	 * A node set up as by new Node(state, parentNode, action, mdp, isSubNode, a1node)
+	 */
+	public Node obtain(long state, Node parentNode, Action action, boolean isSubNode, A1Node a1node) {
+		int slot = nodes.next();
+		Node node = nodes.get(slot);
+		if(node == null) {
+			node = new Node(state, parentNode, action, mdp, isSubNode, a1node);
+			nodes.set(slot, node);
+			return node;
+		}
+		node.init(state, parentNode, action, mdp, isSubNode, a1node);
+		return node;
+	}
+
+	/**
+	 * An A1Node set up as by new A1Node(state, parentNode, action, mdp, probabilityOffset, fuelRequired), that
+	 * takes its outcome nodes from this pool when it creates them
+	 */
+	public A1Node obtainA1(long state, Node parentNode, Action action, int probabilityOffset, int fuelRequired) {
+		A1Node node = nextA1();
+		node.initA1(state, parentNode, action, mdp, probabilityOffset, fuelRequired, this);
+		return node;
+	}
+
+	/**
+	 * A copy of a node with its statistics, see Node.copy
+	 */
+	public Node copy(Node other, Node parentNode, A1Node a1node, int shift) {
+		int slot = nodes.next();
+		Node node = nodes.get(slot);
+		if(node == null) {
+			node = new Node(other.getPackedState(), null, null, mdp, false, null);
+			nodes.set(slot, node);
+		}
+		node.copy(other, parentNode, a1node, shift);
+		return node;
+	}
+
+	/**
+	 * A copy of an A1Node with its statistics and no outcomes, see A1Node.copyA1
+	 */
+	public A1Node copyA1(A1Node other, Node parentNode, int shift) {
+		A1Node node = nextA1();
+		node.copyA1(other, parentNode, shift, this);
+		return node;
+	}
+
+	private A1Node nextA1() {
+		int slot = a1Nodes.next();
+		A1Node node = a1Nodes.get(slot);
+		if(node == null) {
+			node = new A1Node(mdp);
+			a1Nodes.set(slot, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Takes back every node handed out, in O(1)
+	 */
+	public void reset() {
+		nodes.reset();
+		a1Nodes.reset();
+	}
+
+	/**
+	 * @return the number of nodes handed out since the last reset, outcome nodes included
+	 */
+	public int size() {
+		return nodes.size() + a1Nodes.size();
+	}
+
+	/**
+	 * @return the number of node objects the pool holds
+	 */
+	public int capacity() {
+		return nodes.capacity() + a1Nodes.capacity();
+	}
+
+	//SLOTS IN CHUNKS. A NEW CHUNK IS PUBLISHED BY REPLACING THE VOLATILE ARRAY OF CHUNKS, SO A THREAD NEVER SEES HALF OF IT.
+	private static class Arena<T> {
+
+		private final AtomicInteger used;
+		private volatile T[][] chunks;
+
+		private Arena(T[][] chunks) {
+			used = new AtomicInteger();
+			this.chunks = chunks;
+		}
+
+		private int next() {
+			int slot = used.getAndIncrement();
+			if(slot >>> CHUNK_BITS >= chunks.length) {
+				grow(slot >>> CHUNK_BITS);
+			}
+			return slot;
+		}
+
+		@SuppressWarnings("unchecked")
+		private synchronized void grow(int chunk) {
+			T[][] current = chunks;
+			if(chunk < current.length) {
+				return;
+			}
+			T[][] grown = Arrays.copyOf(current, Math.max(chunk + 1, current.length * 2));
+			for(int i = current.length; i < grown.length; i++) {
+				grown[i] = (T[]) Array.newInstance(current.getClass().getComponentType().getComponentType(), CHUNK_SIZE);
+			}
+			chunks = grown;
+		}
+
+		private T get(int slot) {
+			return chunks[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+		}
+
+		private void set(int slot, T node) {
+			chunks[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = node;
+		}
+
+		private void reset() {
+			used.set(0);
+		}
+
+		private int size() {
+			return used.get();
+		}
+
+		private int capacity() {
+			return chunks.length * CHUNK_SIZE;
+		}
+	}
+
+}
@@ -5,7 +5,10 @@ import simulator.*;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This class is the simulator for the problem.
@@ -13,6 +16,8 @@ import java.util.List;
  */
 public class OwnSimulator {
 
+    private static final TirePressure[] PRESSURES = TirePressure.values();
+
     /** Problem spec for the current problem **/
     private ProblemSpec ps;
     /** The current state of the environment **/
@@ -22,6 +27,9 @@ public class OwnSimulator {
     private boolean verbose = false;
     /** A container to store steps for output **/
     private MDPSolver mdp;
+    /** Random source for sampling moves, one per simulator so parallel searches never share it.
+     * Null when the simulator is shared between threads, each thread then uses its ThreadLocalRandom **/
+    private Random random;
 
 
 
@@ -32,8 +40,21 @@ public class OwnSimulator {
      * @param outputFile the path for output file
      */
     public OwnSimulator(ProblemSpec ps, MDPSolver mdp) {
+        this(ps, mdp, new Random());
+    }
+
+    /**
+     * Construct a new simulator instance that samples moves from the given random source
+     *
+     * @param ps the ProblemSpec
+     * @param mdp the solver the simulated nodes belong to
+     * @param random the random source used for sampling moves, or null to
+     *               use the ThreadLocalRandom of the calling thread
+     */
+    public OwnSimulator(ProblemSpec ps, MDPSolver mdp, Random random) {
         this.ps = ps;
         this.mdp = mdp;
+        this.random = random;
 //        reset();
     }
     
@@ -75,7 +96,23 @@ public class OwnSimulator {
      */
     public Node step(Action a, Node node) throws IllegalArgumentException {
 
-        State nextState;
+       Node nextNode = new Node(step(a, node.getPackedState()), node, a, mdp, false, null);
+  
+       return nextNode;
+    }
+
+    /**
+     * Perform an action on a packed state and receive the next packed state.
+     * Nothing is allocated, slip and breakdown are left in the returned state
+     * for the caller to turn into time.
+     *
+     * @param a the action to perform
+     * @param state the packed state to perform it in
+     * @return the next packed state
+     */
+    public long step(Action a, long state) throws IllegalArgumentException {
+
+        long nextState;
 
         if (!actionValidForLevel(a)) {
             throw new IllegalArgumentException("ActionType A"
@@ -99,33 +136,31 @@ public class OwnSimulator {
 
         switch(a.getActionType().getActionNo()) {
             case 1:
-                nextState = performA1(node);
+                nextState = performA1(state);
                 break;
             case 2:
-                nextState = performA2(a, node);
+                nextState = performA2(a, state);
                 break;
             case 3:
-                nextState = performA3(a, node);
+                nextState = performA3(a, state);
                 break;
             case 4:
-                nextState = performA4(a, node);
+                nextState = performA4(a, state);
                 break;
             case 5:
-                nextState = performA5(a, node);
+                nextState = performA5(a, state);
                 break;
             case 6:
-                nextState = performA6(a, node);
+                nextState = performA6(a, state);
                 break;
             case 7:
-                nextState = performA7(a, node);
+                nextState = performA7(a, state);
                 break;
             default:
-                nextState = node.getNodeState();
+                nextState = state;
         }
-       
-       Node nextNode = new Node(nextState, node, a, mdp, false, null);
-  
-       return nextNode;
+
+        return nextState;
     }
 
     /**
@@ -143,201 +178,121 @@ public class OwnSimulator {
      *
      * @return the next state
      */
-    private State performA1(Node node) {
+    private long performA1(long state) {
 
-        State nextState;
+        long nextState;
 
         // check there is enough fuel to make move in current state
-        int fuelRequired = getFuelConsumption(node);
-        int currentFuel = node.getNodeState().getFuel();
+        int fuelRequired = getFuelConsumption(state);
+        int currentFuel = PackedState.getFuel(state);
         if (fuelRequired > currentFuel) {
-            return node.getNodeState();
+            return state;
         }
 
         // Sample move distance
-        int moveDistance = sampleMoveDistance(node);
+        int moveDistance = sampleMoveDistance(state);
 
         // handle slip and breakdown cases, addition of steps handled in step method
         if (moveDistance == ProblemSpec.SLIP) {
             if (verbose) {
                 System.out.println("\tSampled move distance=SLIP");
             }
-            nextState = node.getNodeState().changeSlipCondition(true);
+            nextState = PackedState.changeSlipCondition(state, true);
         } else if (moveDistance == ProblemSpec.BREAKDOWN) {
             if (verbose) {
                 System.out.println("\tSampled move distance=BREAKDOWN");
             }
-            nextState = node.getNodeState().changeBreakdownCondition(true);
+            nextState = PackedState.changeBreakdownCondition(state, true);
         } else {
             if (verbose) {
                 System.out.println("\tSampled move distance=" + moveDistance);
             }
-            nextState = node.getNodeState().changePosition(moveDistance, ps.getN());
+            nextState = PackedState.changePosition(state, moveDistance, ps.getN());
         }
 
         // handle fuel usage for level 2 and above
         if (ps.getLevel().getLevelNumber() > 1) {
-            nextState = nextState.consumeFuel(fuelRequired);
+            nextState = PackedState.consumeFuel(nextState, fuelRequired);
         }
 
         return nextState;
     }
 
     /**
-     * Return the move distance by sampling from conditional probability
-     * distribution.
-     *
-     * N.B. this formula is not at all optimized for performance, so be wary if
-     * trying to use it for finding a policy
+     * Return the move distance by sampling from the precomputed move
+     * distribution of the state. Constant time with the alias tables of the
+     * solver, otherwise a scan of the cumulative distribution.
      *
      * @return the move distance in range [-4, 5] or SLIP or BREAKDOWN
      */
-    private int sampleMoveDistance(Node node) {
-
-        double[] moveProbs = getMoveProbs(node);
-
-        double p = Math.random();
-        double pSum = 0;
-        int move = 0;
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            pSum += moveProbs[k];
-            if (p <= pSum) {
-                move = ps.convertIndexIntoMove(k);
-                break;
-            }
-        }
-        return move;
+    private int sampleMoveDistance(long state) {
+        return ps.convertIndexIntoMove(sampleMoveIndex(state));
     }
 
     /**
-     * Calculate the conditional move probabilities for the current state.
-     *
-     *          P(K | C, D, Ti, Te, Pressure)
+     * Sample which outcome of CONTINUE_MOVING happens in a state, in the
+     * order of getMoveOutcomes. Does not check the fuel.
      *
-     * @return list of move probabilities
+     * @return the index of the outcome in range [0, CAR_MOVE_RANGE)
      */
-    public double[] getMoveProbs(Node node) {
+    public int sampleMoveIndex(long state) {
 
-        // get parameters of current state
-        Terrain terrain = ps.getEnvironmentMap()[node.getNodeState().getPos() - 1];
-        int terrainIndex = ps.getTerrainIndex(terrain);
-        String car = node.getNodeState().getCarType();
-        String driver = node.getNodeState().getDriver();
-        Tire tire = node.getNodeState().getTireModel();
-
-        // calculate priors
-        double priorK = 1.0 / ProblemSpec.CAR_MOVE_RANGE;
-        double priorCar = 1.0 / ps.getCT();
-        double priorDriver = 1.0 / ps.getDT();
-        double priorTire = 1.0 / ProblemSpec.NUM_TYRE_MODELS;
-        double priorTerrain = 1.0 / ps.getNT();
-        double priorPressure = 1.0 / ProblemSpec.TIRE_PRESSURE_LEVELS;
-
-        // get probabilities of k given parameter
-        double[] pKGivenCar = ps.getCarMoveProbability().get(car);
-        double[] pKGivenDriver = ps.getDriverMoveProbability().get(driver);
-        double[] pKGivenTire = ps.getTireModelMoveProbability().get(tire);
-        double pSlipGivenTerrain = ps.getSlipProbability()[terrainIndex];
-        double[] pKGivenPressureTerrain = convertSlipProbs(pSlipGivenTerrain, node);
-
-        // use bayes rule to get probability of parameter given k
-        double[] pCarGivenK = bayesRule(pKGivenCar, priorCar, priorK);
-        double[] pDriverGivenK = bayesRule(pKGivenDriver, priorDriver, priorK);
-        double[] pTireGivenK = bayesRule(pKGivenTire, priorTire, priorK);
-        double[] pPressureTerrainGivenK = bayesRule(pKGivenPressureTerrain,
-                (priorTerrain * priorPressure), priorK);
-
-        // use conditional probability formula on assignment sheet to get what
-        // we want (but what is it that we want....)
-        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
-        double kProbsSum = 0;
-        double kProb;
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            kProb = magicFormula(pCarGivenK[k], pDriverGivenK[k],
-                    pTireGivenK[k], pPressureTerrainGivenK[k], priorK);
-            kProbsSum += kProb;
-            kProbs[k] = kProb;
+        int offset = getMoveProbabilityOffset(state);
+        AliasTable aliasTable = mdp.getMoveAliasTable();
+        if (aliasTable != null) {
+            return aliasTable.sample(offset, random);
         }
 
-        // Normalize
+        double[] cumulative = ps.getMoveCumulativeProbabilities();
+        double p = (random == null) ? ThreadLocalRandom.current().nextDouble() : random.nextDouble();
         for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            kProbs[k] /= kProbsSum;
+            if (p < cumulative[offset + k]) { //A MOVE WITH PROBABILITY 0 HAS AN EMPTY INTERVAL
+                return k;
+            }
         }
-
-        return kProbs;
+        //ROUNDING CAN LEAVE THE LAST SUM JUST BELOW 1, p THEN GOES TO THE LAST MOVE THAT CAN HAPPEN
+        double[] moveProbs = ps.getMoveProbabilities();
+        int k = ProblemSpec.CAR_MOVE_RANGE - 1;
+        while (k > 0 && moveProbs[offset + k] == 0) {
+            k--;
+        }
+        return k;
     }
 
     /**
-     * Convert the probability of slipping on a given terrain with 50% tire
-     * pressure into a probability list, of move distance versus current
-     * terrain and tire pressure.
+     * Get the conditional move probabilities for the current state.
+     *
+     *          P(K | C, D, Ti, Te, Pressure)
      *
-     * @param slipProb probability of slipping on current terrain and 50%
-     *                 tire pressure
-     * @return list of move probabilities given current terrain and pressure
+     * @return list of move probabilities, a copy of the row in the table
      */
-    private double[] convertSlipProbs(double slipProb, Node node) {
-
-        // Adjust slip probability based on tire pressure
-        TirePressure pressure = node.getNodeState().getTirePressure();
-        if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
-            slipProb *= 2;
-        } else if (pressure == TirePressure.ONE_HUNDRED_PERCENT) {
-            slipProb *= 3;
-        }
-        // Make sure new probability is not above max
-        if (slipProb > ProblemSpec.MAX_SLIP_PROBABILITY) {
-            slipProb = ProblemSpec.MAX_SLIP_PROBABILITY;
-        }
-
-        // for each terrain, all other action probabilities are uniform over
-        // remaining probability
-        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
-        double leftOver = 1 - slipProb;
-        double otherProb = leftOver / (ProblemSpec.CAR_MOVE_RANGE - 1);
-        for (int i = 0; i < ProblemSpec.CAR_MOVE_RANGE; i++) {
-            if (i == ps.getIndexOfMove(ProblemSpec.SLIP)) {
-                kProbs[i] = slipProb;
-            } else {
-                kProbs[i] = otherProb;
-            }
-        }
-
-        return kProbs;
+    public double[] getMoveProbs(Node node) {
+        return getMoveProbs(node.getPackedState());
     }
 
     /**
-     * Apply bayes rule to all values in cond probs list.
+     * Get the conditional move probabilities for a packed state.
      *
-     * @param condProb list of P(B|A)
-     * @param priorA prior probability of parameter A
-     * @param priorB prior probability of parameter B
-     * @return list of P(A|B)
+     * @return list of move probabilities, a copy of the row in the table
      */
-    private double[] bayesRule(double[] condProb, double priorA, double priorB) {
-
-        double[] swappedProb = new double[condProb.length];
-
-        for (int i = 0; i < condProb.length; i++) {
-            swappedProb[i] = (condProb[i] * priorA) / priorB;
-        }
-        return swappedProb;
+    public double[] getMoveProbs(long state) {
+        int offset = getMoveProbabilityOffset(state);
+        return Arrays.copyOfRange(ps.getMoveProbabilities(), offset,
+                offset + ProblemSpec.CAR_MOVE_RANGE);
     }
 
     /**
-     * Conditional probability formula from assignment 2 sheet
+     * Where the move probabilities of a packed state start in
+     * ps.getMoveProbabilities(), for callers that want to read them without
+     * copying.
      *
-     * @param pA P(A | E)
-     * @param pB P(B | E)
-     * @param pC P(C | E)
-     * @param pD P(D | E)
-     * @param priorE P(E)
-     * @return numerator of the P(E | A, B, C, D) formula (still need to divide
-     *      by sum over E)
+     * @return offset of the first of the CAR_MOVE_RANGE probabilities
      */
-    private double magicFormula(double pA, double pB, double pC, double pD,
-                               double priorE) {
-        return pA * pB * pC * pD * priorE;
+    public int getMoveProbabilityOffset(long state) {
+        return ps.getMoveProbabilityOffset(
+                ps.getTerrainIndexOfCell(PackedState.getPos(state)),
+                PackedState.getCar(state), PackedState.getDriver(state),
+                PackedState.getTire(state), PackedState.getPressure(state));
     }
 
     /**
@@ -346,15 +301,22 @@ public class OwnSimulator {
      * @return move fuel consumption for current state
      */
     public int getFuelConsumption(Node node) {
+        return getFuelConsumption(node.getPackedState());
+    }
+
+    /**
+     * Get the fuel consumption of moving in a packed state
+     *
+     * @return move fuel consumption for the state
+     */
+    public int getFuelConsumption(long state) {
 
         // get parameters of current state
-        Terrain terrain = ps.getEnvironmentMap()[node.getNodeState().getPos() - 1];
-        String car = node.getNodeState().getCarType();
-        TirePressure pressure = node.getNodeState().getTirePressure();
+        TirePressure pressure = PRESSURES[PackedState.getPressure(state)];
 
         // get fuel consumption
-        int terrainIndex = ps.getTerrainIndex(terrain);
-        int carIndex = ps.getCarIndex(car);
+        int terrainIndex = ps.getTerrainIndexOfCell(PackedState.getPos(state));
+        int carIndex = PackedState.getCar(state);
         int fuelConsumption = ps.getFuelUsage()[terrainIndex][carIndex];
 
         if (pressure == TirePressure.FIFTY_PERCENT) {
@@ -371,15 +333,16 @@ public class OwnSimulator {
      * @param a a CHANGE_CAR action object
      * @return the next state
      */
-    private State performA2(Action a, Node node) {
+    private long performA2(Action a, long state) {
 
-        if (node.getNodeState().getCarType().equals(a.getCarType())) {
+        int car = ps.getCarIndex(a.getCarType());
+        if (PackedState.getCar(state) == car) {
             // changing to same car type does not change state but still costs a step
             // no cheap refill here, muhahaha
-            return node.getNodeState();
+            return state;
         }
 
-        return node.getNodeState().changeCarType(a.getCarType());
+        return PackedState.changeCarType(state, car);
     }
 
     /**
@@ -388,7 +351,7 @@ public class OwnSimulator {
      * @param a a CHANGE_DRIVER action object
      * @return the next state
      */
-    private State performA3(Action a, Node node) { return node.getNodeState().changeDriver(a.getDriverType()); }
+    private long performA3(Action a, long state) { return PackedState.changeDriver(state, ps.getDriverIndex(a.getDriverType())); }
 
     /**
      * Perform the CHANGE_TIRES action
@@ -396,8 +359,8 @@ public class OwnSimulator {
      * @param a a CHANGE_TIRES action object
      * @return the next state
      */
-    private State performA4(Action a, Node node) {
-        return node.getNodeState().changeTires(a.getTireModel());
+    private long performA4(Action a, long state) {
+        return PackedState.changeTires(state, a.getTireModel().ordinal());
     }
 
     /**
@@ -406,12 +369,12 @@ public class OwnSimulator {
      * @param a a ADD_FUEL action object
      * @return the next state
      */
-    private State performA5(Action a, Node node) {
+    private long performA5(Action a, long state) {
         // calculate number of steps used for refueling (minus 1 since we add
         // 1 in main function
         //int stepsRequired = (int) Math.ceil(a.getFuel() / (float) 10);
     	// steps += (stepsRequired - 1);
-        return node.getNodeState().addFuel(a.getFuel());
+        return PackedState.addFuel(state, a.getFuel());
     }
 
     /**
@@ -420,8 +383,8 @@ public class OwnSimulator {
      * @param a a CHANGE_PRESSURE action object
      * @return the next state
      */
-    private State performA6(Action a, Node node) {
-        return node.getNodeState().changeTirePressure(a.getTirePressure());
+    private long performA6(Action a, long state) {
+        return PackedState.changeTirePressure(state, a.getTirePressure().ordinal());
     }
 
     /**
@@ -430,14 +393,15 @@ public class OwnSimulator {
      * @param a a CHANGE_CAR_AND_DRIVER action object
      * @return the next state
      */
-    private State performA7(Action a, Node node) {
+    private long performA7(Action a, long state) {
 
-        if (node.getNodeState().getCarType().equals(a.getCarType())) {
+        int car = ps.getCarIndex(a.getCarType());
+        int driver = ps.getDriverIndex(a.getDriverType());
+        if (PackedState.getCar(state) == car) {
             // if car the same, only change driver so no sneaky fuel exploit
-            return node.getNodeState().changeDriver(a.getDriverType());
+            return PackedState.changeDriver(state, driver);
         }
-        return node.getNodeState().changeCarAndDriver(a.getCarType(),
-                a.getDriverType());
+        return PackedState.changeCarAndDriver(state, car, driver);
     }
 
     /**
@@ -467,7 +431,94 @@ public class OwnSimulator {
         if (n == null) {
             return false;
         }
-        return n.getNodeState().getPos() >= ps.getN();
+        return isGoalState(n.getPackedState());
+    }
+
+    /**
+     * Enumerate the outcomes of CONTINUE_MOVING in a packed state, the same
+     * outcomes performA1 samples from. They come in the order of the move
+     * probability table: moves -4 to 5, then SLIP and BREAKDOWN. Slip and
+     * breakdown are turned into time the way the real simulator does it, so
+     * the returned states have the flags cleared. The durations are the ones
+     * of getMoveDuration.
+     *
+     * @param state the packed state to move from
+     * @param nextStates receives the next states, at least CAR_MOVE_RANGE long
+     * @param probabilities receives the probability of each outcome
+     * @param durations receives the number of time steps each outcome takes
+     * @return the number of outcomes, 1 when there is not enough fuel to move
+     */
+    public int getMoveOutcomes(long state, long[] nextStates,
+                               double[] probabilities, int[] durations) {
+
+        int fuelRequired = getFuelConsumption(state);
+        if (fuelRequired > PackedState.getFuel(state)) {
+            nextStates[0] = state;
+            probabilities[0] = 1;
+            durations[0] = 1;
+            return 1;
+        }
+
+        long movedState = state;
+        if (ps.getLevel().getLevelNumber() > 1) {
+            movedState = PackedState.consumeFuel(state, fuelRequired);
+        }
+
+        double[] moveProbs = ps.getMoveProbabilities();
+        int offset = getMoveProbabilityOffset(state);
+        int[] successors = ps.getMoveSuccessors();
+        int row = PackedState.getPos(state) * ProblemSpec.CAR_MOVE_RANGE;
+        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+            int move = ps.convertIndexIntoMove(k);
+            probabilities[k] = moveProbs[offset + k];
+            nextStates[k] = PackedState.changePositionTo(movedState, successors[row + k]);
+            durations[k] = getMoveDuration(ps, move);
+        }
+        return ProblemSpec.CAR_MOVE_RANGE;
+    }
+
+    /**
+     * Get the number of time steps the real simulator spends on an outcome
+     * of CONTINUE_MOVING: a slip or a breakdown keeps the car in place for
+     * the recovery or repair time, every other move takes a single step. A
+     * recovery or repair time of 0 is counted as one step, so every outcome
+     * moves the clock forward. The search tree, the rollouts and the solvers
+     * all count the time of a move with this.
+     *
+     * @param move the move, as ProblemSpec.convertIndexIntoMove gives it
+     * @return the number of time steps
+     */
+    public static int getMoveDuration(ProblemSpec ps, int move) {
+        if (move == ProblemSpec.SLIP) {
+            return Math.max(1, ps.getSlipRecoveryTime());
+        } else if (move == ProblemSpec.BREAKDOWN) {
+            return Math.max(1, ps.getRepairTime());
+        }
+        return 1;
+    }
+
+    /**
+     * Get the number of time steps the real simulator spends on an action
+     * other than CONTINUE_MOVING, whose time depends on the outcome.
+     *
+     * @param a the action
+     * @return the number of time steps
+     */
+    public int getDuration(Action a) {
+        if (a.getActionType().getActionNo() == 5) {
+            return (int) Math.ceil(a.getFuel() / (float) 10);
+        }
+        return 1;
+    }
+
+    /**
+     * Check whether a packed state is the goal state or not
+     *
+     * @param state the packed state to check
+     * @return True if the state is a goal state, False otherwise
+     */
+    public boolean isGoalState(long state) {
+        return PackedState.getPos(state) >= ps.getN();
     }
 
     /**
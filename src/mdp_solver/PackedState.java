@@ -0,0 +1,216 @@
+package mdp_solver;
+
+import problem.ProblemSpec;
+import problem.Tire;
+import problem.TirePressure;
+import simulator.State;
+
+/**
+ * A state of the problem packed into a single long, so the search can create and compare states
+ * without allocating anything. The fields are stored as indices:
+ *
+ * - bits  0-15 position of the car (1 to N)
+ * - bit  16    slip condition
+ * - bit  17    breakdown condition
+ * - bits 18-25 car type, index in ProblemSpec.getCarOrder()
+ * - bits 26-33 driver, index in ProblemSpec.getDriverOrder()
+ * - bits 34-35 tire model, Tire ordinal
+ * - bits 36-41 fuel (0 to 50)
+ * - bits 42-43 tire pressure, TirePressure ordinal
+ *
+ * The transitions mirror the ones in simulator.State. Conversion to and from State is only needed
+ * where the search meets the real Simulator.
+ */
+public final class PackedState {
+
+	/** Number of low bits a packed state uses, the bits above are free for callers building keys **/
+	public static final int BITS = 44;
+
+	private static final int POS_SHIFT = 0;
+	private static final int SLIP_SHIFT = 16;
+	private static final int BREAKDOWN_SHIFT = 17;
+	private static final int CAR_SHIFT = 18;
+	private static final int DRIVER_SHIFT = 26;
+	private static final int TIRE_SHIFT = 34;
+	private static final int FUEL_SHIFT = 36;
+	private static final int PRESSURE_SHIFT = 42;
+
+	private static final long POS_MASK = 0xFFFFL;
+	private static final long CAR_MASK = 0xFFL;
+	private static final long DRIVER_MASK = 0xFFL;
+	private static final long TIRE_MASK = 0x3L;
+	private static final long FUEL_MASK = 0x3FL;
+	private static final long PRESSURE_MASK = 0x3L;
+
+	private static final Tire[] TIRES = Tire.values();
+	private static final TirePressure[] PRESSURES = TirePressure.values();
+	private static final int FULL_PRESSURE = TirePressure.ONE_HUNDRED_PERCENT.ordinal();
+
+	private PackedState() {
+	}
+
+	/**
+	 * Pack the given fields into a state
+	 */
+	public static long pack(int pos, boolean slip, boolean breakdown, int car, int fuel, int pressure, int driver, int tire) {
+		return ((long) pos << POS_SHIFT)
+				| ((slip ? 1L : 0L) << SLIP_SHIFT)
+				| ((breakdown ? 1L : 0L) << BREAKDOWN_SHIFT)
+				| ((long) car << CAR_SHIFT)
+				| ((long) driver << DRIVER_SHIFT)
+				| ((long) tire << TIRE_SHIFT)
+				| ((long) fuel << FUEL_SHIFT)
+				| ((long) pressure << PRESSURE_SHIFT);
+	}
+
+	/**
+	 * Pack a simulator state
+	 *
+	 * @param state the state to pack
+	 * @param ps the problem spec giving the car and driver order
+	 * @return the packed state
+	 */
+	public static long pack(State state, ProblemSpec ps) {
+		return pack(state.getPos(), state.isInSlipCondition(), state.isInBreakdownCondition(),
+				ps.getCarIndex(state.getCarType()), state.getFuel(), state.getTirePressure().ordinal(),
+				ps.getDriverIndex(state.getDriver()), state.getTireModel().ordinal());
+	}
+
+	/**
+	 * Unpack into a simulator state
+	 *
+	 * @param state the packed state
+	 * @param ps the problem spec giving the car and driver order
+	 * @return the simulator state
+	 */
+	public static State toState(long state, ProblemSpec ps) {
+		return new State(getPos(state), isInSlipCondition(state), isInBreakdownCondition(state),
+				ps.getCarOrder().get(getCar(state)), getFuel(state), PRESSURES[getPressure(state)],
+				ps.getDriverOrder().get(getDriver(state)), TIRES[getTire(state)]);
+	}
+
+	public static int getPos(long state) {
+		return (int) ((state >>> POS_SHIFT) & POS_MASK);
+	}
+
+	public static boolean isInSlipCondition(long state) {
+		return ((state >>> SLIP_SHIFT) & 1L) != 0;
+	}
+
+	public static boolean isInBreakdownCondition(long state) {
+		return ((state >>> BREAKDOWN_SHIFT) & 1L) != 0;
+	}
+
+	public static int getCar(long state) {
+		return (int) ((state >>> CAR_SHIFT) & CAR_MASK);
+	}
+
+	public static int getDriver(long state) {
+		return (int) ((state >>> DRIVER_SHIFT) & DRIVER_MASK);
+	}
+
+	public static int getTire(long state) {
+		return (int) ((state >>> TIRE_SHIFT) & TIRE_MASK);
+	}
+
+	public static int getFuel(long state) {
+		return (int) ((state >>> FUEL_SHIFT) & FUEL_MASK);
+	}
+
+	public static int getPressure(long state) {
+		return (int) ((state >>> PRESSURE_SHIFT) & PRESSURE_MASK);
+	}
+
+	private static long with(long state, int shift, long mask, long value) {
+		return (state & ~(mask << shift)) | (value << shift);
+	}
+
+	/**
+	 * Move the car, clamped to the cells 1 to N
+	 *
+	 * @param move the distance to move
+	 * @param N the max position (i.e. the goal region)
+	 * @return the next state
+	 */
+	public static long changePosition(long state, int move, int N) {
+		int pos = getPos(state) + move;
+		if (pos > N) {
+			pos = N;
+		} else if (pos < 1) {
+			// not zero indexed as per assignment spec
+			pos = 1;
+		}
+		return with(state, POS_SHIFT, POS_MASK, pos);
+	}
+
+	/**
+	 * Put the car in a cell, for moves already looked up in ProblemSpec.getMoveSuccessors()
+	 */
+	public static long changePositionTo(long state, int pos) {
+		return with(state, POS_SHIFT, POS_MASK, pos);
+	}
+
+	public static long changeSlipCondition(long state, boolean slip) {
+		return with(state, SLIP_SHIFT, 1L, slip ? 1L : 0L);
+	}
+
+	public static long changeBreakdownCondition(long state, boolean breakdown) {
+		return with(state, BREAKDOWN_SHIFT, 1L, breakdown ? 1L : 0L);
+	}
+
+	/**
+	 * Change car, which also fills the tank and resets the tire pressure
+	 */
+	public static long changeCarType(long state, int car) {
+		state = with(state, CAR_SHIFT, CAR_MASK, car);
+		state = with(state, FUEL_SHIFT, FUEL_MASK, ProblemSpec.FUEL_MAX);
+		return with(state, PRESSURE_SHIFT, PRESSURE_MASK, FULL_PRESSURE);
+	}
+
+	public static long changeDriver(long state, int driver) {
+		return with(state, DRIVER_SHIFT, DRIVER_MASK, driver);
+	}
+
+	/**
+	 * Change tires, which also resets the tire pressure
+	 */
+	public static long changeTires(long state, int tire) {
+		state = with(state, TIRE_SHIFT, TIRE_MASK, tire);
+		return with(state, PRESSURE_SHIFT, PRESSURE_MASK, FULL_PRESSURE);
+	}
+
+	/**
+	 * Add fuel, capped at ProblemSpec.FUEL_MAX
+	 */
+	public static long addFuel(long state, int fuelToAdd) {
+		if (fuelToAdd < 0) {
+			throw new IllegalArgumentException("Fuel to add must be positive");
+		}
+		int fuel = Math.min(getFuel(state) + fuelToAdd, ProblemSpec.FUEL_MAX);
+		return with(state, FUEL_SHIFT, FUEL_MASK, fuel);
+	}
+
+	public static long consumeFuel(long state, int fuelConsumed) {
+		if (fuelConsumed < 0) {
+			throw new IllegalArgumentException("Fuel consumed must be positive");
+		}
+		int fuel = getFuel(state) - fuelConsumed;
+		if (fuel < ProblemSpec.FUEL_MIN) {
+			throw new IllegalArgumentException("Too much fuel consumed: " + fuelConsumed);
+		}
+		return with(state, FUEL_SHIFT, FUEL_MASK, fuel);
+	}
+
+	public static long changeTirePressure(long state, int pressure) {
+		return with(state, PRESSURE_SHIFT, PRESSURE_MASK, pressure);
+	}
+
+	/**
+	 * Change car and driver, unlike changeCarType this does not touch fuel or pressure
+	 */
+	public static long changeCarAndDriver(long state, int car, int driver) {
+		state = with(state, CAR_SHIFT, CAR_MASK, car);
+		return with(state, DRIVER_SHIFT, DRIVER_MASK, driver);
+	}
+
+}
@@ -0,0 +1,34 @@
+package mdp_solver;
+
+import problem.Action;
+import simulator.State;
+
+/**
+ * Something that decides which action MDPSolver should feed to the real simulator next.
+ * 
+ * The solver asks for an action, performs it in the simulator and then tells the planner what happened,
+ * so that the planner can move on to the new state.
+ */
+public interface Planner {
+	
+	/**
+	 * @return the action to take from the current state, or null if the current state is a goal state
+	 */
+	Action nextAction();
+	
+	/**
+	 * Called after the action has been performed in the real simulator.
+	 * 
+	 * @param action the action that was performed
+	 * @param resultState the state the simulator returned
+	 * @param timeUnits the number of steps the simulator has taken so far
+	 */
+	void advance(Action action, State resultState, int timeUnits);
+	
+	/**
+	 * Releases any threads held by the planner. Called once the episode is over.
+	 */
+	default void shutdown() {
+	}
+
+}
@@ -0,0 +1,138 @@
+package mdp_solver;
+
+import java.util.List;
+
+import problem.Action;
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * Solves the problem once at startup by policy iteration on the discounted model of TransitionModel,
+ * using the discount factor of the problem spec. Unlike ValueIteration time is not part of the state, so
+ * the policy does not look at maxT, it only prefers reaching the goal sooner.
+ *
+ * Each policy is evaluated with Gauss-Seidel sweeps over the sparse rows of the model. The values of the
+ * previous policy are the starting point, and the sweeps go from the goal backwards along the track, so
+ * few sweeps are needed even on long tracks. The policy is then improved greedily until it is stable.
+ */
+public class PolicyIteration implements Planner {
+
+	private static final double TOLERANCE = 1e-9;
+	private static final int MAX_SWEEPS = 10000;
+	private static final int MAX_ITERATIONS = 1000;
+
+	private ProblemSpec ps;
+	private List<Action> actionSpace;
+	private OwnSimulator ownSim;
+	private StateIndexer indexer;
+	private TransitionModel model;
+	private int N;
+	/** policy[index] is the index in actionSpace of the best action in the state **/
+	private short[] policy;
+	private double[] values;
+	private long currentState;
+	private int sweeps;
+
+	/**
+	 * Solves the policy right away
+	 * 
+	 * @param verbose whether to print the size and the time of the solve
+	 */
+	public PolicyIteration(ProblemSpec ps, List<Action> actionSpace, OwnSimulator ownSim, State startState, boolean verbose) {
+		if(actionSpace.size() > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many actions for the policy table: " + actionSpace.size());
+		}
+		this.ps = ps;
+		this.actionSpace = actionSpace;
+		this.ownSim = ownSim;
+		indexer = new StateIndexer(ps);
+		N = ps.getN();
+		currentState = PackedState.pack(startState, ps);
+
+		long startTime = System.currentTimeMillis();
+		model = new TransitionModel(ps, actionSpace, ownSim, indexer, ps.getDiscountFactor());
+		int iterations = solve();
+		if(verbose) {
+			System.out.println("Policy iteration: " + indexer.getNumberOfStates() + " states, " + model.getNumberOfEntries()
+					+ " move entries, " + iterations + " iterations, " + sweeps + " sweeps, "
+					+ (System.currentTimeMillis() - startTime) + " ms, value " + values[indexer.getIndex(currentState)]);
+		}
+	}
+
+	private int solve() {
+		policy = new short[indexer.getNumberOfStates()]; //START BY ALWAYS MOVING
+		values = new double[indexer.getNumberOfStates()];
+		sweeps = 0;
+		for(int iteration = 1; iteration <= MAX_ITERATIONS; iteration++) {
+			evaluate();
+			if(!improve()) {
+				return iteration;
+			}
+		}
+		return MAX_ITERATIONS;
+	}
+
+	//GAUSS-SEIDEL: THE NEW VALUES ARE USED AS SOON AS THEY ARE COMPUTED
+	private void evaluate() {
+		for(int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+			sweeps++;
+			double maxChange = 0;
+			for(int configuration = 0; configuration < indexer.getNumberOfConfigurations(); configuration++) {
+				for(int pos = N - 1; pos >= 1; pos--) { //BACKWARDS FROM THE GOAL, WHICH STAYS AT 0
+					int s = indexer.getIndex(configuration, pos);
+					double value = model.getQValue(s, policy[s], values);
+					maxChange = Math.max(maxChange, Math.abs(value - values[s]));
+					values[s] = value;
+				}
+			}
+			if(maxChange < TOLERANCE) {
+				return;
+			}
+		}
+	}
+
+	//RETURNS WHETHER THE POLICY CHANGED. AN ACTION ONLY TAKES OVER WHEN IT IS CLEARLY BETTER, SO TIES CAN NOT MAKE IT CYCLE.
+	private boolean improve() {
+		boolean changed = false;
+		for(int configuration = 0; configuration < indexer.getNumberOfConfigurations(); configuration++) {
+			for(int pos = 1; pos < N; pos++) {
+				int s = indexer.getIndex(configuration, pos);
+				int bestAction = policy[s];
+				double bestValue = model.getQValue(s, bestAction, values);
+				for(int a = 0; a < model.getNumberOfActions(); a++) {
+					double q = model.getQValue(s, a, values);
+					if(q > bestValue + TOLERANCE) {
+						bestValue = q;
+						bestAction = a;
+					}
+				}
+				if(bestAction != policy[s]) {
+					policy[s] = (short) bestAction;
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * The expected discounted reward of a state under the solved policy
+	 */
+	double getValue(long state) {
+		return values[indexer.getIndex(state)];
+	}
+
+	@Override
+	public Action nextAction() {
+		if(ownSim.isGoalState(currentState)) {
+			return null;
+		}
+		return actionSpace.get(policy[indexer.getIndex(currentState)]);
+	}
+
+	@Override
+	public void advance(Action action, State resultState, int timeUnits) {
+		currentState = PackedState.pack(resultState, ps);
+	}
+
+}
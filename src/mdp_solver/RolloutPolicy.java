@@ -0,0 +1,322 @@
+package mdp_solver;
+
+import java.util.LinkedHashMap;
+
+import problem.Action;
+import problem.ActionType;
+import problem.ProblemSpec;
+import problem.Tire;
+
+/**
+ * The rollout heuristic of the search and the rollouts played with it. A rollout moves whenever moving
+ * forward is likely enough, otherwise it takes the action that makes it most likely, without repeating
+ * the action it just took.
+ *
+ * Everything works on packed states and allocates nothing, so the policy can be shared by the search
+ * engines and run on any number of threads as long as the simulator can.
+ *
+ * What the heuristic takes depends only on the row of the move probability table of the state (the
+ * terrain under the car, the car, the driver, the tire model and the pressure) and on the previous action.
+ * It is worked out for every row when the policy is created, after that a step of a rollout is one read
+ * of preferredActions.
+ */
+public class RolloutPolicy {
+
+	private ProblemSpec ps;
+	private ActionSpace actionSpace;
+	private OwnSimulator ownSim;
+	private int slipDuration;
+	private int breakdownDuration;
+	/** The action index the heuristic takes, at row * (actions + 1) + previous action index + 1 **/
+	private short[] preferredActions;
+	private int columns;
+	private RolloutValues values; //null WHEN THE ROLLOUTS ARE SAMPLED
+
+	public RolloutPolicy(ProblemSpec ps, ActionSpace actionSpace, OwnSimulator ownSim) {
+		this(ps, actionSpace, ownSim, null);
+	}
+
+	/**
+	 * @param values the exact values of the rollouts of this policy, which simulate returns instead of sampling a rollout, or null
+	 */
+	public RolloutPolicy(ProblemSpec ps, ActionSpace actionSpace, OwnSimulator ownSim, RolloutValues values) {
+		this.ps = ps;
+		this.actionSpace = actionSpace;
+		this.ownSim = ownSim;
+		slipDuration = OwnSimulator.getMoveDuration(ps, ProblemSpec.SLIP);
+		breakdownDuration = OwnSimulator.getMoveDuration(ps, ProblemSpec.BREAKDOWN);
+		this.values = values;
+		buildPreferredActions();
+	}
+	
+	//EACH ROW IS WORKED OUT ON A STATE THAT HAS IT. A TERRAIN THAT IS NOT ON THE MAP NEVER COMES UP, ITS ROWS STAY A1.
+	private void buildPreferredActions() {
+		if(actionSpace.size() > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many actions for the rollout table: " + actionSpace.size());
+		}
+		columns = actionSpace.size() + 1;
+		preferredActions = new short[ps.getMoveProbabilities().length / ProblemSpec.CAR_MOVE_RANGE * columns];
+		int[] cellOfTerrain = new int[ps.getNT()];
+		for(int cell = ps.getN(); cell >= 1; cell--) {
+			cellOfTerrain[ps.getTerrainIndexOfCell(cell)] = cell;
+		}
+		for(int terrain = 0; terrain < ps.getNT(); terrain++) {
+			if(cellOfTerrain[terrain] == 0) {
+				continue;
+			}
+			for(int car = 0; car < ps.getCT(); car++) {
+				for(int driver = 0; driver < ps.getDT(); driver++) {
+					for(int tire = 0; tire < ProblemSpec.NUM_TYRE_MODELS; tire++) {
+						for(int pressure = 0; pressure < ProblemSpec.TIRE_PRESSURE_LEVELS; pressure++) {
+							long state = PackedState.pack(cellOfTerrain[terrain], false, false, car, ProblemSpec.FUEL_MAX, pressure, driver, tire);
+							int row = ps.getMoveProbabilityOffset(terrain, car, driver, tire, pressure) / ProblemSpec.CAR_MOVE_RANGE;
+							fillRow(row * columns, state);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	//LEAVING OUT THE PREVIOUS ACTION ONLY MATTERS WHEN IT IS THE BEST ONE, THEN THE NEXT BEST IS TAKEN
+	private void fillRow(int start, long state) {
+		double sum = calculateProbMove(state);
+		int best = ActionSpace.MOVE;
+		int secondBest = ActionSpace.MOVE;
+		if(sum <= 0.5) {
+			best = calculatePreferredAction(state, -1, sum);
+			if(best != ActionSpace.MOVE) {
+				secondBest = calculatePreferredAction(state, best, sum);
+			}
+		}
+		for(int column = 0; column < columns; column++) {
+			preferredActions[start + column] = (short) best;
+		}
+		preferredActions[start + best + 1] = (short) secondBest;
+	}
+
+	/**
+	 * Plays the rollout heuristic from a packed state. The state, the time and the previous action are the
+	 * whole rollout, they are kept in locals and nothing is allocated per step. The time is counted the way
+	 * Node counts it: one unit per action, or the time of OwnSimulator.getMoveDuration for a slip or a breakdown.
+	 * 
+	 * With RolloutValues the expected reward of the rollout is returned instead, it counts as a rollout of 0 steps.
+	 * 
+	 * A rollout that can not get any reward any more is cut off with 0 instead of played to maxT: when the
+	 * goal is too far to reach in the time left, or when it has gone into a cycle. Every step that does not
+	 * sample a move (any action but A1, and A1 without the fuel to move) is fully decided by the state and
+	 * the previous action, so once such a pair comes back without a move in between it will keep coming
+	 * back. The cycles are found with Brent's algorithm, which keeps a single pair to compare with.
+	 * 
+	 * @param timeUnits the time the state is reached at
+	 * @param previousAction the action that led to the state, which the heuristic will not repeat, or null
+	 * @param metrics where the rollout is counted, or null
+	 * @return the reward of where it ended
+	 */
+	public double simulate(long state, int timeUnits, Action previousAction, SearchMetrics metrics) {
+		long startTime = (metrics == null) ? 0 : System.nanoTime();
+		if(values != null) {
+			double value = values.getValue(state, timeUnits, actionSpace.getIndex(previousAction));
+			if(metrics != null) {
+				metrics.addRollout(0, System.nanoTime() - startTime);
+			}
+			return value;
+		}
+		int steps = 0;
+		int timeAllowed = ps.getMaxT();
+		int timeSpent = timeUnits; //THE TIME OF THE FIRST STATE IS CHECKED AS IT IS, EVERY LATER ONE WITH 1 ADDED
+		
+		int previous = actionSpace.getIndex(previousAction);
+		//BRENT: THE PAIR THE LATER ONES ARE COMPARED WITH, AND HOW MANY STEPS AFTER IT THE PAIR IS REPLACED
+		long savedState = state;
+		int savedPrevious = previous;
+		int power = 1;
+		int length = 0;
+		while(!(timeSpent >= timeAllowed || ownSim.isGoalState(state))) {
+			if(isDeadEnd(state, timeUnits)) {
+				return cutOff(timeUnits, timeAllowed, steps, startTime, metrics);
+			}
+			int action = rolloutHeuristic(state, previous);
+			boolean sampled = action == ActionSpace.MOVE && PackedState.getFuel(state) >= ownSim.getFuelConsumption(state);
+			state = (action == ActionSpace.MOVE) ? ownSim.step(actionSpace.get(action), state) : actionSpace.step(action, state);
+			if(PackedState.isInSlipCondition(state)) {
+				timeUnits += slipDuration;
+				state = PackedState.changeSlipCondition(state, false);
+			}
+			else if(PackedState.isInBreakdownCondition(state)) {
+				timeUnits += breakdownDuration;
+				state = PackedState.changeBreakdownCondition(state, false);
+			}
+			else {
+				timeUnits++;
+			}
+			previous = action;
+			timeSpent = timeUnits + 1;
+			steps++;
+			
+			if(sampled) { //A MOVE STARTS THE SEARCH FOR A CYCLE OVER
+				savedState = state;
+				savedPrevious = previous;
+				power = 1;
+				length = 0;
+			}
+			else if(state == savedState && previous == savedPrevious) {
+				if(timeSpent < timeAllowed) {
+					return cutOff(timeUnits, timeAllowed, steps, startTime, metrics);
+				}
+			}
+			else if(length == power) {
+				savedState = state;
+				savedPrevious = previous;
+				power *= 2;
+				length = 0;
+			}
+			length++;
+		}
+		if(metrics != null) {
+			metrics.addRollout(steps, System.nanoTime() - startTime);
+		}
+		
+		return calculateReward(state, timeUnits);
+	}
+	
+	//THE CAR MOVES AT MOST CAR_MAX_MOVE CELLS A STEP, AND THE GOAL IS WORTH NOTHING AFTER maxT
+	private boolean isDeadEnd(long state, int timeUnits) {
+		int distance = ps.getN() - PackedState.getPos(state);
+		return timeUnits + (distance + ProblemSpec.CAR_MAX_MOVE - 1) / ProblemSpec.CAR_MAX_MOVE > ps.getMaxT();
+	}
+	
+	//EVERY STEP LEFT TAKES AT LEAST ONE TIME UNIT, THE ROLLOUT WOULD HAVE TAKEN AT MOST THAT MANY MORE
+	private double cutOff(int timeUnits, int timeAllowed, int steps, long startTime, SearchMetrics metrics) {
+		if(metrics != null) {
+			metrics.addRollout(steps, System.nanoTime() - startTime);
+			metrics.addDeadEnd(Math.max(0, timeAllowed - 1 - timeUnits));
+		}
+		return 0;
+	}
+	
+	/**
+	 * Whether simulate returns the exact expected reward, the same every time it is called with the same arguments
+	 */
+	public boolean isExact() {
+		return values != null;
+	}
+	
+	//CALCULATES THE PROBABILITY OF MOVING FORWARD FROM A GIVEN STATE.
+	public double calculateProbMove(long state) {
+		
+		//READ STRAIGHT FROM THE PRECOMPUTED TABLE, NO COPY
+		double[] moveProbs = ps.getMoveProbabilities();
+		int offset = ownSim.getMoveProbabilityOffset(state);
+		
+		double sum = 0;
+		for(int i = 5; i < 10; i++) {
+			sum += moveProbs[offset + i];
+		}
+		return sum;
+	}
+	
+	/**
+	 * @param prevAction the action that led to the state, or null
+	 */
+	public Action rolloutHeuristic(long state, Action prevAction) {
+		return actionSpace.get(rolloutHeuristic(state, actionSpace.getIndex(prevAction)));
+	}
+	
+	/**
+	 * @param prevAction the index of the action that led to the state, or -1
+	 * @return the index of the action to take
+	 */
+	int rolloutHeuristic(long state, int prevAction) {
+		int row = ownSim.getMoveProbabilityOffset(state) / ProblemSpec.CAR_MOVE_RANGE;
+		return preferredActions[row * columns + prevAction + 1];
+	}
+
+	
+	//THE ACTION THAT MAKES MOVING FORWARD MOST LIKELY, NEVER THE ONE JUST TAKEN. A1 WHEN NOTHING BEATS IT.
+	//ONLY USED TO BUILD preferredActions, AND BY THE TEST THAT CHECKS THEM.
+	int calculatePreferredAction(long state, int prevAction, double sum) {
+		int bestAction = ActionSpace.MOVE;
+		double temporaryBestSumMove = sum;
+		
+//		//IF YOUR PREVIOUS ACTION WAS NOT TO MOVE FORWARD, THIS MEANS THAT YOU MUST TRY TO MOVE FORWARD NOW.
+//		
+//		if(prevAction != -1 && prevAction != ActionSpace.MOVE) {
+//			return ActionSpace.MOVE;
+//		}
+		
+		
+		//TRY CHANGE CAR (A2)
+		LinkedHashMap<String, double[]> carMoveProb = ps.getCarMoveProbability();
+		for(int i = actionSpace.getFirstIndex(ActionType.CHANGE_CAR); i < actionSpace.getEndIndex(ActionType.CHANGE_CAR); i++) {
+			double probMoveForward = sumForward(carMoveProb.get(actionSpace.get(i).getCarType()));
+			if(probMoveForward > temporaryBestSumMove && i != prevAction) {
+				temporaryBestSumMove = probMoveForward;
+				bestAction = i;
+			}
+		}
+		
+		//TRY CHANGE DRIVER (A3)
+		
+		LinkedHashMap<String, double[]> driverMoveProb = ps.getDriverMoveProbability();
+		for(int i = actionSpace.getFirstIndex(ActionType.CHANGE_DRIVER); i < actionSpace.getEndIndex(ActionType.CHANGE_DRIVER); i++) {
+			double probMoveForward = sumForward(driverMoveProb.get(actionSpace.get(i).getDriverType()));
+			if(probMoveForward > temporaryBestSumMove && i != prevAction) {
+				temporaryBestSumMove = probMoveForward;
+				bestAction = i;
+			}
+		}
+		
+		
+		//TRY CHANGE TIRES (A4)
+		LinkedHashMap<Tire, double[]> tireMoveProb = ps.getTireModelMoveProbability();
+		for(int i = actionSpace.getFirstIndex(ActionType.CHANGE_TIRES); i < actionSpace.getEndIndex(ActionType.CHANGE_TIRES); i++) {
+			double probMoveForward = sumForward(tireMoveProb.get(actionSpace.get(i).getTireModel()));
+			if(probMoveForward > temporaryBestSumMove && i != prevAction) {
+				temporaryBestSumMove = probMoveForward;
+				bestAction = i;
+			}
+		}
+		
+		
+		//TRY ADD FUEL?? :) (A5), CHANGE PRESSURE (A6) AND FOR LEVEL 4 CHANGE CAR AND DRIVER (A7). THE LEVELS BELOW HAVE NONE OF THEM.
+		//THESE ARE TRIED ON THE STATE THEY LEAD TO.
+		for(int i = actionSpace.getFirstIndex(ActionType.ADD_FUEL); i < actionSpace.size(); i++) {
+			double newMoveSum = calculateProbMove(actionSpace.step(i, state));
+			if(newMoveSum > temporaryBestSumMove && i != prevAction) {
+				temporaryBestSumMove = newMoveSum;
+				bestAction = i;
+			}
+		}
+		
+		return bestAction;
+	}
+	
+	//THE PROBABILITY OF MOVING 1 TO 5 CELLS FORWARD
+	private static double sumForward(double[] moveProb) {
+		double probMoveForward = 0;
+		for(int j = 5; j < 10; j++) {
+			probMoveForward += moveProb[j];
+		}
+		return probMoveForward;
+	}
+
+	/**
+	 * 100 divided by the time the goal is reached at, 0 when it is not the goal or the time is up
+	 */
+	public double calculateReward(long state, int timeUnits) {
+		if(ownSim.isGoalState(state)) {
+			double timeSpent = timeUnits;
+			if(timeSpent > ps.getMaxT()) {
+				return 0;
+			}
+			else {
+				return 100/timeSpent;
+			}
+		}
+		else {
+			return 0;
+		}
+	}
+
+}
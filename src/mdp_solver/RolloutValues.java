@@ -0,0 +1,197 @@
+package mdp_solver;
+
+import problem.ProblemSpec;
+
+/**
+ * The exact expected reward of a rollout of RolloutPolicy from every state at every time, so a leaf of
+ * the search is valued with one lookup instead of a sampled rollout. The rollout policy takes the same
+ * action every time it is in the same state after the same previous action, and the outcomes of moving
+ * are known, so the expectation is found by backward induction over time like in ValueIteration:
+ *
+ *          S(t, s, b) = sum over s' of  P(s' | s, a(s, b)) * W(t + duration, s', b')
+ *
+ * where a(s, b) is the action the policy takes in s, b tells whether the previous action was the one the
+ * policy likes best in s (it is never taken twice in a row, the next best is taken instead), and W is
+ * what RolloutPolicy.simulate gets after a step: 100/t' in the goal when t' <= maxT, 0 once the next step
+ * would be at maxT and S otherwise. The time of each step is counted the way the rollouts count it.
+ *
+ * The table holds maxT floats for every state, and a second set for the states where the policy does not
+ * simply move. That can be a few hundred MB, so MDPSolver only solves it when it fits in
+ * SearchConfig.getRolloutValueMaxBytes() and in a share of the heap, otherwise the rollouts are sampled as before.
+ */
+public class RolloutValues {
+
+	private static final int NONE = -1;
+
+	private ProblemSpec ps;
+	private ActionSpace actionSpace;
+	private OwnSimulator ownSim;
+	private StateIndexer indexer;
+	private int maxT;
+	private int numberOfStates;
+	/** The action the policy likes best in each state, by state index **/
+	private short[] bestActions;
+	/** The action it takes when the best one was the previous action, for the states where that is not A1 **/
+	private short[] secondActions;
+	/** Where the values of a state after its best action are, after numberOfStates, NONE when the best action is A1 **/
+	private int[] blockedIndices;
+	private int numberOfBlocked;
+	/** values[t][i] is S(t, s, b) for t < maxT, i is the index of s or numberOfStates + blockedIndices[s] **/
+	private float[][] values;
+
+	/**
+	 * Finds the actions of the policy in every state, which is cheap. The values are not solved until solve().
+	 *
+	 * @param policy the policy whose rollouts are valued
+	 */
+	public RolloutValues(ProblemSpec ps, ActionSpace actionSpace, OwnSimulator ownSim, RolloutPolicy policy) {
+		this.ps = ps;
+		this.actionSpace = actionSpace;
+		this.ownSim = ownSim;
+		indexer = new StateIndexer(ps);
+		maxT = ps.getMaxT();
+		numberOfStates = indexer.getNumberOfStates();
+		bestActions = new short[numberOfStates];
+		secondActions = new short[numberOfStates];
+		blockedIndices = new int[numberOfStates];
+		numberOfBlocked = 0;
+		for(int s = 0; s < numberOfStates; s++) {
+			long state = indexer.getState(s);
+			int best = policy.rolloutHeuristic(state, NONE);
+			bestActions[s] = (short) best;
+			if(best == ActionSpace.MOVE) {
+				blockedIndices[s] = NONE;
+			}
+			else {
+				secondActions[s] = (short) policy.rolloutHeuristic(state, best);
+				blockedIndices[s] = numberOfBlocked++;
+			}
+		}
+	}
+
+	/**
+	 * @return the memory the values take once they are solved
+	 */
+	public long getRequiredBytes() {
+		return (long) maxT * (numberOfStates + numberOfBlocked) * Float.BYTES;
+	}
+
+	public void solve() {
+		int width = numberOfStates + numberOfBlocked;
+
+		//THE OUTCOMES OF A1 ARE ENUMERATED ONCE PER STATE, -1 STANDS FOR THE GOAL. THEIR PROBABILITIES ARE THE ROW OF THE
+		//MOVE PROBABILITY TABLE AT moveOffsets[s], -1 WHEN THERE IS NOT ENOUGH FUEL TO MOVE AND THE CAR STAYS WHERE IT IS.
+		int[] moveOutcomes = new int[numberOfStates * ProblemSpec.CAR_MOVE_RANGE];
+		int[] moveOffsets = new int[numberOfStates];
+		//EVERY OTHER ACTION HAS ONE SUCCESSOR, FOR THE BEST ACTION AT s AND FOR THE SECOND ONE AT numberOfStates + blockedIndices[s]
+		int[] nextIndices = new int[width];
+		long[] nextStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int[] durations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		for(int s = 0; s < numberOfStates; s++) {
+			long state = indexer.getState(s);
+			if(ownSim.isGoalState(state)) {
+				continue;
+			}
+			if(ownSim.getMoveOutcomes(state, nextStates, probabilities, durations) == 1) {
+				moveOffsets[s] = NONE;
+			}
+			else {
+				moveOffsets[s] = ownSim.getMoveProbabilityOffset(state);
+				for(int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+					moveOutcomes[s * ProblemSpec.CAR_MOVE_RANGE + k] = ownSim.isGoalState(nextStates[k]) ? NONE : indexer.getIndex(nextStates[k]);
+				}
+			}
+			nextIndices[s] = getNextIndex(state, bestActions[s]);
+			if(blockedIndices[s] != NONE) {
+				nextIndices[numberOfStates + blockedIndices[s]] = getNextIndex(state, secondActions[s]);
+			}
+		}
+
+		//A ROLLOUT STEP TAKES ONE TIME UNIT, A SLIP OR A BREAKDOWN ITS RECOVERY OR REPAIR TIME
+		int[] moveDurations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		for(int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+			moveDurations[k] = OwnSimulator.getMoveDuration(ps, ps.convertIndexIntoMove(k));
+		}
+
+		double[] moveProbs = ps.getMoveProbabilities();
+		values = new float[maxT][];
+		for(int t = maxT - 1; t >= 0; t--) {
+			float[] value = new float[width];
+			values[t] = value;
+			for(int s = 0; s < numberOfStates; s++) {
+				if(indexer.getPos(s) == ps.getN()) { //THE GOAL IS VALUED BY getValue ITSELF
+					continue;
+				}
+				value[s] = (float) getStepValue(t, s, bestActions[s], nextIndices[s], moveOffsets[s], moveOutcomes, moveDurations, moveProbs);
+				if(blockedIndices[s] != NONE) {
+					int blocked = numberOfStates + blockedIndices[s];
+					value[blocked] = (float) getStepValue(t, s, secondActions[s], nextIndices[blocked], moveOffsets[s], moveOutcomes, moveDurations, moveProbs);
+				}
+			}
+		}
+	}
+
+	//WHERE THE VALUES OF THE STATE AFTER A NON-MOVING ACTION ARE, THE ACTION IS THE PREVIOUS ONE THERE
+	private int getNextIndex(long state, int action) {
+		if(action == ActionSpace.MOVE) {
+			return NONE;
+		}
+		return getValueIndex(indexer.getIndex(actionSpace.step(action, state)), action);
+	}
+
+	private int getValueIndex(int s, int previousAction) {
+		if(previousAction == bestActions[s] && blockedIndices[s] != NONE) {
+			return numberOfStates + blockedIndices[s];
+		}
+		return s;
+	}
+
+	//S(t, s, b) FOR THE ACTION a(s, b)
+	private double getStepValue(int t, int s, int action, int nextIndex, int moveOffset, int[] moveOutcomes, int[] moveDurations, double[] moveProbs) {
+		if(action != ActionSpace.MOVE) {
+			return getLaterValue(t + 1, nextIndex);
+		}
+		if(moveOffset == NONE) { //NOT ENOUGH FUEL, THE STATE STAYS AS IT IS
+			return getLaterValue(t + 1, s);
+		}
+		double value = 0;
+		int outcome = s * ProblemSpec.CAR_MOVE_RANGE;
+		for(int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+			double p = moveProbs[moveOffset + k];
+			if(p > 0) {
+				int next = moveOutcomes[outcome + k];
+				int time = t + moveDurations[k];
+				//AFTER A1 THE PREVIOUS ACTION IS A1, WHICH IS NEVER BLOCKED: WHERE A1 IS THE BEST ACTION THERE IS NO SECOND ONE
+				value += p * ((next == NONE) ? getGoalReward(time) : getLaterValue(time, next));
+			}
+		}
+		return value;
+	}
+
+	//W(t, i): THE ROLLOUT STOPS ONCE THE NEXT STEP WOULD BE AT maxT
+	private double getLaterValue(int t, int index) {
+		return (t + 1 >= maxT) ? 0 : values[t][index];
+	}
+
+	private double getGoalReward(int t) {
+		return (t > maxT) ? 0 : 100.0 / t;
+	}
+
+	/**
+	 * The expected reward of RolloutPolicy.simulate(state, timeUnits, previousAction, ...)
+	 *
+	 * @param previousAction the index of the action that led to the state, or -1
+	 */
+	public double getValue(long state, int timeUnits, int previousAction) {
+		if(ownSim.isGoalState(state)) {
+			return getGoalReward(timeUnits);
+		}
+		if(timeUnits >= maxT) {
+			return 0;
+		}
+		int s = indexer.getIndex(state);
+		return values[timeUnits][getValueIndex(s, previousAction)];
+	}
+
+}
@@ -0,0 +1,111 @@
+package mdp_solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import problem.Action;
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * Root parallel MCTS: every thread grows its own independent tree from the same root with its own
+ * simulator and random source. Before each decision the visit counts and values of the root children are
+ * summed over all trees and the best action is picked from the merged statistics.
+ */
+public class RootParallelMCTS implements Planner {
+	
+	private List<MCTS> workers;
+	private ExecutorService executor;
+	private boolean verbose;
+	private MDPSolver mdp;
+	
+	public RootParallelMCTS(ProblemSpec ps, ActionSpace actionSpace, MDPSolver mdp, State rootState, int threads) {
+		this.mdp = mdp;
+		verbose = mdp.getSearchConfig().isVerbose();
+		workers = new ArrayList<>();
+		for(int i = 0; i < threads; i++) {
+			Node rootNode = new Node(rootState, null, null, mdp, false, null);
+			workers.add(new MCTS(ps, actionSpace, mdp, rootNode, new OwnSimulator(ps, mdp, new Random())));
+		}
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "mcts-root-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public Action nextAction() {
+		if(workers.get(0).isRootGoal()) {
+			return null;
+		}
+		Action forcedAction = workers.get(0).getForcedAction();
+		if(forcedAction != null) { //NOTHING TO SEARCH FOR
+			if(verbose) {
+				System.out.println("Forced " + forcedAction.getText() + ", search skipped");
+			}
+			return forcedAction;
+		}
+		List<Callable<Void>> searches = new ArrayList<>();
+		for(MCTS worker : workers) {
+			searches.add(() -> {
+				worker.search();
+				return null;
+			});
+		}
+		try {
+			for(Future<Void> search : executor.invokeAll(searches)) {
+				search.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A search thread failed", e.getCause());
+		}
+		
+		Map<Action, double[]> rootStatistics = new HashMap<>();
+		int goal = 0;
+		int notGoal = 0;
+		for(MCTS worker : workers) {
+			worker.collectRootStatistics(rootStatistics);
+			goal += worker.getGoal();
+			notGoal += worker.getNotGoal();
+		}
+		if(verbose) {
+			System.out.println("Hit goal: " + goal);
+			System.out.println("--------");
+			System.out.println("Did not hit goal " + notGoal);
+		}
+		if(mdp.getSearchConfig().getMetricsFile() != null) {
+			SearchMetrics metrics = new SearchMetrics();
+			for(MCTS worker : workers) {
+				metrics.merge(worker.getMetrics());
+			}
+			mdp.recordMetrics(metrics, workers.get(0).getRootNode().getTimeUnits());
+		}
+		
+		return workers.get(0).selectBestAction(rootStatistics);
+	}
+
+	@Override
+	public void advance(Action action, State resultState, int timeUnits) {
+		for(MCTS worker : workers) {
+			worker.advanceRoot(action, resultState, timeUnits);
+		}
+	}
+	
+	@Override
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,94 @@
+package mdp_solver;
+
+/**
+ * How much searching MCTS may do for one decision. The search stops at whichever limit it reaches first,
+ * a limit of 0 is no limit. At least one of the time, iteration and node limits must be set.
+ */
+public class SearchBudget {
+
+	/** Wall-clock time per decision in milliseconds **/
+	private long timeMillis;
+	/** Max number of select/expand/rollout iterations per decision **/
+	private long maxIterations;
+	/** Max number of nodes added to the tree per decision **/
+	private long maxNodes;
+	/** Number of iterations between looks at the clock **/
+	private int clockCheckInterval;
+	/** Whether to stop as soon as the best child of the root can no longer be overtaken **/
+	private boolean earlyStop;
+	/** Confidence required before a root child counts as beaten by the leader's confidence interval **/
+	private double separationConfidence;
+
+	public SearchBudget() {
+		timeMillis = 14500;
+		maxIterations = 0;
+		maxNodes = 0;
+		clockCheckInterval = 64;
+		earlyStop = true;
+		separationConfidence = 0.99;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public void setTimeMillis(long timeMillis) {
+		if(timeMillis < 0) {
+			throw new IllegalArgumentException("Time budget can not be negative");
+		}
+		this.timeMillis = timeMillis;
+	}
+
+	public long getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(long maxIterations) {
+		if(maxIterations < 0) {
+			throw new IllegalArgumentException("Iteration budget can not be negative");
+		}
+		this.maxIterations = maxIterations;
+	}
+
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+	public void setMaxNodes(long maxNodes) {
+		if(maxNodes < 0) {
+			throw new IllegalArgumentException("Node budget can not be negative");
+		}
+		this.maxNodes = maxNodes;
+	}
+
+	public int getClockCheckInterval() {
+		return clockCheckInterval;
+	}
+
+	public void setClockCheckInterval(int clockCheckInterval) {
+		if(clockCheckInterval < 1) {
+			throw new IllegalArgumentException("Clock check interval must be at least 1");
+		}
+		this.clockCheckInterval = clockCheckInterval;
+	}
+
+	public boolean isEarlyStop() {
+		return earlyStop;
+	}
+
+	public void setEarlyStop(boolean earlyStop) {
+		this.earlyStop = earlyStop;
+	}
+
+	public double getSeparationConfidence() {
+		return separationConfidence;
+	}
+
+	public void setSeparationConfidence(double separationConfidence) {
+		if(separationConfidence <= 0 || separationConfidence >= 1) {
+			throw new IllegalArgumentException("Separation confidence must be between 0 and 1");
+		}
+		this.separationConfidence = separationConfidence;
+	}
+
+}
@@ -0,0 +1,161 @@
+package mdp_solver;
+
+/**
+ * Settings for how MDPSolver searches for its actions.
+ */
+public class SearchConfig {
+	
+	/** Which planner to use **/
+	private SolverMode mode;
+	/** Number of threads used by the parallel modes **/
+	private int threads;
+	/** Number of threads in the fork-join pool that runs leaf rollouts, 1 runs them on the searching thread. Not used with exact rollout values. **/
+	private int leafThreads;
+	/** Number of rollouts made from every leaf, 1 is used with exact rollout values (see RolloutValues) **/
+	private int rolloutsPerLeaf;
+	/** Whether moves are sampled from alias tables, false keeps the cumulative scan for comparing runs with the old sampler **/
+	private boolean aliasSampling;
+	/** Whether the search leaves out the states that can not reach the goal by maxT (see FeasibilityBounds) **/
+	private boolean feasibilityPruning;
+	/** Max number of nodes in the transposition table of MCTS, 0 searches a plain tree **/
+	private int transpositionTableSize;
+	/** Number of time units that count as the same time when looking up transpositions **/
+	private int transpositionTimeBucket;
+	/** How much MCTS may search for each decision **/
+	private SearchBudget budget;
+	/** Whether the solver prints its progress, every step and search statistics **/
+	private boolean verbose;
+	/** File that SearchMetrics of every search are appended to as JSON lines, null collects no metrics **/
+	private String metricsFile;
+	/** Max memory for the exact values of the rollouts (see RolloutValues), beyond it, beyond a quarter of the heap or at 0 the rollouts are sampled **/
+	private long rolloutValueMaxBytes;
+	
+	public SearchConfig() {
+		mode = SolverMode.SEQUENTIAL;
+		threads = Runtime.getRuntime().availableProcessors();
+		leafThreads = 1;
+		rolloutsPerLeaf = 1;
+		aliasSampling = true;
+		feasibilityPruning = true;
+		transpositionTableSize = 0;
+		transpositionTimeBucket = 1;
+		budget = new SearchBudget();
+		verbose = true;
+		rolloutValueMaxBytes = 512L << 20;
+	}
+	
+	public SolverMode getMode() {
+		return mode;
+	}
+	
+	public void setMode(SolverMode mode) {
+		this.mode = mode;
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
+	
+	public void setThreads(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.threads = threads;
+	}
+
+	public int getLeafThreads() {
+		return leafThreads;
+	}
+	
+	public void setLeafThreads(int leafThreads) {
+		if(leafThreads < 1) {
+			throw new IllegalArgumentException("Number of leaf threads must be at least 1");
+		}
+		this.leafThreads = leafThreads;
+	}
+	
+	public int getRolloutsPerLeaf() {
+		return rolloutsPerLeaf;
+	}
+	
+	public void setRolloutsPerLeaf(int rolloutsPerLeaf) {
+		if(rolloutsPerLeaf < 1) {
+			throw new IllegalArgumentException("Number of rollouts per leaf must be at least 1");
+		}
+		this.rolloutsPerLeaf = rolloutsPerLeaf;
+	}
+	
+	public boolean isAliasSampling() {
+		return aliasSampling;
+	}
+	
+	public void setAliasSampling(boolean aliasSampling) {
+		this.aliasSampling = aliasSampling;
+	}
+	
+	public boolean isFeasibilityPruning() {
+		return feasibilityPruning;
+	}
+	
+	public void setFeasibilityPruning(boolean feasibilityPruning) {
+		this.feasibilityPruning = feasibilityPruning;
+	}
+	
+	public int getTranspositionTableSize() {
+		return transpositionTableSize;
+	}
+	
+	public void setTranspositionTableSize(int transpositionTableSize) {
+		if(transpositionTableSize < 0) {
+			throw new IllegalArgumentException("Transposition table size can not be negative");
+		}
+		this.transpositionTableSize = transpositionTableSize;
+	}
+	
+	public int getTranspositionTimeBucket() {
+		return transpositionTimeBucket;
+	}
+	
+	public void setTranspositionTimeBucket(int transpositionTimeBucket) {
+		if(transpositionTimeBucket < 1) {
+			throw new IllegalArgumentException("Transposition time bucket must be at least 1");
+		}
+		this.transpositionTimeBucket = transpositionTimeBucket;
+	}
+	
+	public SearchBudget getBudget() {
+		return budget;
+	}
+	
+	public void setBudget(SearchBudget budget) {
+		this.budget = budget;
+	}
+	
+	public boolean isVerbose() {
+		return verbose;
+	}
+	
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	public String getMetricsFile() {
+		return metricsFile;
+	}
+	
+	public void setMetricsFile(String metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+	
+	public long getRolloutValueMaxBytes() {
+		return rolloutValueMaxBytes;
+	}
+	
+	public void setRolloutValueMaxBytes(long rolloutValueMaxBytes) {
+		if(rolloutValueMaxBytes < 0) {
+			throw new IllegalArgumentException("Max memory for rollout values can not be negative");
+		}
+		this.rolloutValueMaxBytes = rolloutValueMaxBytes;
+	}
+
+}
@@ -0,0 +1,259 @@
+package mdp_solver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one search of MCTS did for one decision. The counters are filled in by every search thread while
+ * it runs, the rest is set by MCTS.getMetrics() when the search is over. The metrics of the trees of
+ * RootParallelMCTS are merged into one before they are written.
+ *
+ * The phase times are summed over the search threads, so with several threads they add up to more than
+ * the elapsed time.
+ */
+public class SearchMetrics {
+
+	private final LongAdder rollouts;
+	private final LongAdder rolloutSteps;
+	private final LongAdder selectNanos;
+	private final LongAdder expandNanos;
+	private final LongAdder rolloutNanos;
+	private final LongAdder backpropNanos;
+	private final LongAdder deadEnds;
+	private final LongAdder deadEndStepsSaved;
+	private final LongAdder prunedChildren;
+	private final LongAdder prunedDescents;
+	private final LongAccumulator maxDepth;
+	private long iterations;
+	private long nodes;
+	private long elapsedMillis;
+	/** Time spent before the search on tables shared by the episode, like RolloutValues, which the budget does not count **/
+	private long setupMillis;
+	private boolean stoppedEarly;
+	/** Visits of the children of the root by the text of their action **/
+	private final Map<String, Long> rootVisits;
+
+	public SearchMetrics() {
+		rollouts = new LongAdder();
+		rolloutSteps = new LongAdder();
+		selectNanos = new LongAdder();
+		expandNanos = new LongAdder();
+		rolloutNanos = new LongAdder();
+		backpropNanos = new LongAdder();
+		deadEnds = new LongAdder();
+		deadEndStepsSaved = new LongAdder();
+		prunedChildren = new LongAdder();
+		prunedDescents = new LongAdder();
+		maxDepth = new LongAccumulator(Math::max, 0);
+		rootVisits = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Counts one simulation from a leaf to the goal or maxT
+	 *
+	 * @param steps the number of actions it took
+	 * @param nanos the time it took
+	 */
+	public void addRollout(int steps, long nanos) {
+		rollouts.increment();
+		rolloutSteps.add(steps);
+		rolloutNanos.add(nanos);
+	}
+
+	/**
+	 * Counts a rollout that was cut off with no reward because it could not reach the goal any more
+	 *
+	 * @param stepsSaved the most steps it would have taken to maxT
+	 */
+	public void addDeadEnd(long stepsSaved) {
+		deadEnds.increment();
+		deadEndStepsSaved.add(stepsSaved);
+	}
+
+	/**
+	 * Counts the children an expansion left out because they can not reach the goal by maxT
+	 */
+	public void addPrunedChildren(int children) {
+		prunedChildren.add(children);
+	}
+
+	/**
+	 * Counts an iteration that stopped at a node that can not reach the goal by maxT, with reward 0 and no rollout
+	 */
+	public void addPrunedDescent() {
+		prunedDescents.increment();
+	}
+
+	/**
+	 * Counts the selection and expansion of one iteration
+	 *
+	 * @param depth the depth of the node the iteration selected
+	 */
+	public void addIteration(int depth, long selectNanos, long expandNanos) {
+		maxDepth.accumulate(depth);
+		this.selectNanos.add(selectNanos);
+		this.expandNanos.add(expandNanos);
+	}
+
+	/**
+	 * Counts the time spent taking the rewards of the simulations back up the tree
+	 */
+	public void addBackprop(long nanos) {
+		backpropNanos.add(nanos);
+	}
+
+	/**
+	 * Sets what the budget of the search counted when it was over
+	 */
+	public void setSearch(long iterations, long nodes, long elapsedMillis, boolean stoppedEarly) {
+		this.iterations = iterations;
+		this.nodes = nodes;
+		this.elapsedMillis = elapsedMillis;
+		this.stoppedEarly = stoppedEarly;
+	}
+
+	public void setSetupMillis(long setupMillis) {
+		this.setupMillis = setupMillis;
+	}
+
+	public void addRootVisits(String action, long visits) {
+		rootVisits.merge(action, visits, Long::sum);
+	}
+
+	/**
+	 * Adds the metrics of a search that ran at the same time as this one, over another tree
+	 */
+	public void merge(SearchMetrics other) {
+		rollouts.add(other.rollouts.sum());
+		rolloutSteps.add(other.rolloutSteps.sum());
+		selectNanos.add(other.selectNanos.sum());
+		expandNanos.add(other.expandNanos.sum());
+		rolloutNanos.add(other.rolloutNanos.sum());
+		backpropNanos.add(other.backpropNanos.sum());
+		deadEnds.add(other.deadEnds.sum());
+		deadEndStepsSaved.add(other.deadEndStepsSaved.sum());
+		prunedChildren.add(other.prunedChildren.sum());
+		prunedDescents.add(other.prunedDescents.sum());
+		maxDepth.accumulate(other.maxDepth.get());
+		iterations += other.iterations;
+		nodes += other.nodes;
+		elapsedMillis = Math.max(elapsedMillis, other.elapsedMillis);
+		setupMillis = Math.max(setupMillis, other.setupMillis);
+		stoppedEarly |= other.stoppedEarly;
+		for(Map.Entry<String, Long> entry : other.rootVisits.entrySet()) {
+			addRootVisits(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public long getIterations() {
+		return iterations;
+	}
+
+	public long getRollouts() {
+		return rollouts.sum();
+	}
+
+	public long getDeadEnds() {
+		return deadEnds.sum();
+	}
+
+	public long getDeadEndStepsSaved() {
+		return deadEndStepsSaved.sum();
+	}
+
+	public long getPrunedChildren() {
+		return prunedChildren.sum();
+	}
+
+	public long getPrunedDescents() {
+		return prunedDescents.sum();
+	}
+
+	public double getRolloutsPerSecond() {
+		return 1000.0 * rollouts.sum() / Math.max(1, elapsedMillis);
+	}
+
+	public double getMeanRolloutLength() {
+		long count = rollouts.sum();
+		return (count == 0) ? 0 : (double) rolloutSteps.sum() / count;
+	}
+
+	/**
+	 * One line of JSON with every metric
+	 *
+	 * @param run what the decision belongs to, like the output file of the episode
+	 * @param decision the number of the search in the episode, from 0. Forced actions are not searched.
+	 * @param timeUnits the time of the root state
+	 */
+	public String toJson(String run, int decision, int timeUnits) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"run\":").append(quote(run));
+		json.append(",\"decision\":").append(decision);
+		json.append(",\"time\":").append(timeUnits);
+		json.append(",\"iterations\":").append(iterations);
+		json.append(",\"rollouts\":").append(rollouts.sum());
+		json.append(",\"rolloutsPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getRolloutsPerSecond()));
+		json.append(",\"meanRolloutLength\":").append(String.format(Locale.ROOT, "%.2f", getMeanRolloutLength()));
+		json.append(",\"deadEnds\":").append(deadEnds.sum());
+		json.append(",\"deadEndStepsSaved\":").append(deadEndStepsSaved.sum());
+		json.append(",\"prunedChildren\":").append(prunedChildren.sum());
+		json.append(",\"prunedDescents\":").append(prunedDescents.sum());
+		json.append(",\"nodes\":").append(nodes);
+		json.append(",\"maxDepth\":").append(maxDepth.get());
+		json.append(",\"elapsedMillis\":").append(elapsedMillis);
+		json.append(",\"setupMillis\":").append(setupMillis);
+		json.append(",\"stoppedEarly\":").append(stoppedEarly);
+		json.append(",\"selectMillis\":").append(selectNanos.sum() / 1000000);
+		json.append(",\"expandMillis\":").append(expandNanos.sum() / 1000000);
+		json.append(",\"rolloutMillis\":").append(rolloutNanos.sum() / 1000000);
+		json.append(",\"backpropMillis\":").append(backpropNanos.sum() / 1000000);
+		json.append(",\"rootVisits\":{");
+		boolean first = true;
+		for(Map.Entry<String, Long> entry : rootVisits.entrySet()) {
+			if(!first) {
+				json.append(',');
+			}
+			json.append(quote(entry.getKey())).append(':').append(entry.getValue());
+			first = false;
+		}
+		return json.append("}}").toString();
+	}
+
+	private static String quote(String text) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			}
+			else if(c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * Appends a line to a file. Solves running at the same time can share the file, their lines are not mixed up.
+	 */
+	public static synchronized void append(String file, String line) {
+		try {
+			Files.write(Paths.get(file), (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write metrics to " + file, e);
+		}
+	}
+
+}
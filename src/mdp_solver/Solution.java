@@ -1,36 +1,51 @@
 package mdp_solver;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import problem.ProblemSpec;
 
 public class Solution {
-	
+
 	private MDPSolver mdpSolver;
 	private ProblemSpec ps;
-	
+
 	public Solution(String inputFile, String outputFile) throws IOException {
-		System.out.println("ja");
 		ps = new ProblemSpec(inputFile);
-		System.out.println("her");
 		mdpSolver = new MDPSolver(ps, outputFile);
 	}
-	
+
 	public void run() {
 		mdpSolver.solve();
 	}
-	
+
+	/**
+	 * Usage: Solution [--overwrite] <input file> [output file]. Without an output file the solution is written
+	 * under the solutions directory, see BatchSolver.getOutputFile. An output file that is already there is
+	 * only replaced with --overwrite.
+	 */
 	public static void main(String[] args) throws IOException {
-		String filePath = new File("").getAbsolutePath();
-		System.out.println(filePath);
-		String addOn = "examples/level_1/";
-		String input = filePath + "\\" + "input_lvl2_2.txt";
-		System.out.println(input);
-		String output = filePath + "\\" + "solutionInput_lvl2_2_2.txt";
-		System.out.println(output);
-		Solution solution = new Solution(input, output);
-		System.out.println(2);
+		boolean overwrite = args.length > 0 && args[0].equals(BatchSolver.OVERWRITE_OPTION);
+		if(overwrite) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		if(args.length < 1) {
+			System.out.println("Usage: Solution [" + BatchSolver.OVERWRITE_OPTION + "] <input file> [output file]");
+			return;
+		}
+		String input = args[0];
+		Path output = (args.length > 1) ? Paths.get(args[1])
+				: BatchSolver.getOutputFile(Paths.get(input), Paths.get(BatchSolver.DEFAULT_OUTPUT_DIRECTORY));
+		try {
+			BatchSolver.prepareOutputFile(output, overwrite);
+		} catch (FileAlreadyExistsException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		Solution solution = new Solution(input, output.toString());
 		solution.run();
 	}
 }
@@ -0,0 +1,13 @@
+package mdp_solver;
+
+/**
+ * The different ways MDPSolver can pick its actions
+ */
+public enum SolverMode {
+	SEQUENTIAL,       // one MCTS tree on the calling thread
+	ROOT_PARALLEL,    // one independent MCTS tree per thread, root statistics merged before each decision
+	TREE_PARALLEL,    // all threads search one shared MCTS tree, spread out by virtual loss
+	VALUE_ITERATION,  // the whole policy is solved by backward induction at startup, every step is a lookup
+	POLICY_ITERATION, // a discounted policy is solved by policy iteration on a sparse model at startup
+	COMPACT;          // one MCTS tree stored in primitive arrays (CompactTree) on the calling thread
+}
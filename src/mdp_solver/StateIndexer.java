@@ -0,0 +1,91 @@
+package mdp_solver;
+
+import problem.ProblemSpec;
+import problem.TirePressure;
+
+/**
+ * Numbers every state of the problem from 0 to getNumberOfStates()-1, for the solvers that keep a value
+ * or an action for each state in an array.
+ *
+ * A state is split into its position and its configuration (car, driver, tire, fuel and pressure):
+ *
+ *          index = configuration * N + (pos - 1)
+ *
+ * Only CONTINUE_MOVING changes the position, every other action only changes the configuration, so the
+ * solvers can find its successor from the configuration alone. On level 1 fuel is never used and the
+ * pressure can not be changed, so those two are left out of the configuration.
+ */
+public class StateIndexer {
+
+	private static final int FULL_PRESSURE = TirePressure.ONE_HUNDRED_PERCENT.ordinal(); //the only pressure on level 1
+
+	private final int N;
+	private final int DT;
+	private final int fuelLevels;
+	private final int pressureLevels;
+	private final int numberOfConfigurations;
+	/** The packed state of every configuration, with the car at position 1 **/
+	private final long[] configurationStates;
+
+	public StateIndexer(ProblemSpec ps) {
+		N = ps.getN();
+		DT = ps.getDT();
+		boolean fuelAndPressure = ps.getLevel().getLevelNumber() > 1;
+		fuelLevels = fuelAndPressure ? ProblemSpec.FUEL_MAX + 1 : 1;
+		pressureLevels = fuelAndPressure ? ProblemSpec.TIRE_PRESSURE_LEVELS : 1;
+		numberOfConfigurations = ps.getCT() * DT * ProblemSpec.NUM_TYRE_MODELS * fuelLevels * pressureLevels;
+
+		configurationStates = new long[numberOfConfigurations];
+		for(int car = 0; car < ps.getCT(); car++) {
+			for(int driver = 0; driver < DT; driver++) {
+				for(int tire = 0; tire < ProblemSpec.NUM_TYRE_MODELS; tire++) {
+					for(int fuel = 0; fuel < fuelLevels; fuel++) {
+						for(int pressure = 0; pressure < pressureLevels; pressure++) {
+							long state = PackedState.pack(1, false, false, car,
+									fuelAndPressure ? fuel : ProblemSpec.FUEL_MAX,
+									fuelAndPressure ? pressure : FULL_PRESSURE,
+									driver, tire);
+							configurationStates[getConfiguration(state)] = state;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public int getConfiguration(long state) {
+		int configuration = PackedState.getCar(state) * DT + PackedState.getDriver(state);
+		configuration = configuration * ProblemSpec.NUM_TYRE_MODELS + PackedState.getTire(state);
+		configuration = configuration * fuelLevels + (fuelLevels == 1 ? 0 : PackedState.getFuel(state));
+		return configuration * pressureLevels + (pressureLevels == 1 ? 0 : PackedState.getPressure(state));
+	}
+
+	public int getIndex(long state) {
+		return getConfiguration(state) * N + PackedState.getPos(state) - 1;
+	}
+
+	public int getIndex(int configuration, int pos) {
+		return configuration * N + pos - 1;
+	}
+
+	public long getState(int index) {
+		return PackedState.changePosition(configurationStates[index / N], index % N, N);
+	}
+
+	public long getConfigurationState(int configuration) {
+		return configurationStates[configuration];
+	}
+
+	public int getPos(int index) {
+		return index % N + 1;
+	}
+
+	public int getNumberOfConfigurations() {
+		return numberOfConfigurations;
+	}
+
+	public int getNumberOfStates() {
+		return numberOfConfigurations * N;
+	}
+
+}
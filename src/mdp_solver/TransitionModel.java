@@ -0,0 +1,138 @@
+package mdp_solver;
+
+import java.util.List;
+
+import problem.Action;
+import problem.ProblemSpec;
+
+/**
+ * The transition model of the problem as sparse arrays, discounted by the time every outcome takes:
+ *
+ *          Q(s, a) = sum over s' of  P(s' | s, a) * gamma^duration * (s' is the goal ? GOAL_REWARD : V(s'))
+ *
+ * CONTINUE_MOVING has up to 12 outcomes, which are stored as one row per state in compressed sparse row
+ * form (outcomes that end in the same state are merged, the goal is folded into moveGoalWeights). Every
+ * other action is deterministic and does not move the car, so its successor is only stored once per
+ * configuration (see StateIndexer).
+ *
+ * The outcomes come from OwnSimulator, the same model the search samples from.
+ */
+public class TransitionModel {
+
+	public static final double GOAL_REWARD = 100;
+
+	private final StateIndexer indexer;
+	private final int N;
+	private final int numberOfActions;
+	/** The moves of state s are at [moveRowStart[s], moveRowStart[s + 1]) **/
+	private final int[] moveRowStart;
+	private final int[] moveColumns;
+	/** P(s' | s, MOVE) * gamma^duration **/
+	private final double[] moveWeights;
+	/** Summed weight of the moves of a state that reach the goal **/
+	private final double[] moveGoalWeights;
+	/** Successor configuration of configuration c for action a at [c * numberOfActions + a], a > 0 **/
+	private final int[] nextConfigurations;
+	/** gamma^duration of every action but MOVE **/
+	private final double[] actionWeights;
+
+	public TransitionModel(ProblemSpec ps, List<Action> actionSpace, OwnSimulator ownSim, StateIndexer indexer, double discount) {
+		this.indexer = indexer;
+		N = ps.getN();
+		numberOfActions = actionSpace.size();
+		int numberOfStates = indexer.getNumberOfStates();
+
+		actionWeights = new double[numberOfActions];
+		nextConfigurations = new int[indexer.getNumberOfConfigurations() * numberOfActions];
+		for(int a = 1; a < numberOfActions; a++) {
+			actionWeights[a] = Math.pow(discount, ownSim.getDuration(actionSpace.get(a)));
+		}
+		for(int c = 0; c < indexer.getNumberOfConfigurations(); c++) {
+			long configurationState = indexer.getConfigurationState(c);
+			for(int a = 1; a < numberOfActions; a++) {
+				nextConfigurations[c * numberOfActions + a] = indexer.getConfiguration(ownSim.step(actionSpace.get(a), configurationState));
+			}
+		}
+
+		//FIRST PASS COUNTS THE ENTRIES, SECOND PASS FILLS THEM IN
+		moveRowStart = new int[numberOfStates + 1];
+		moveGoalWeights = new double[numberOfStates];
+		long[] nextStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int[] durations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		int[] columns = new int[ProblemSpec.CAR_MOVE_RANGE];
+		double[] weights = new double[ProblemSpec.CAR_MOVE_RANGE];
+		for(int s = 0; s < numberOfStates; s++) {
+			moveRowStart[s + 1] = moveRowStart[s] + buildRow(ownSim, s, nextStates, probabilities, durations, discount, columns, weights);
+		}
+		moveColumns = new int[moveRowStart[numberOfStates]];
+		moveWeights = new double[moveRowStart[numberOfStates]];
+		for(int s = 0; s < numberOfStates; s++) {
+			int entries = buildRow(ownSim, s, nextStates, probabilities, durations, discount, columns, weights);
+			System.arraycopy(columns, 0, moveColumns, moveRowStart[s], entries);
+			System.arraycopy(weights, 0, moveWeights, moveRowStart[s], entries);
+		}
+	}
+
+	//PUTS THE MERGED MOVES OF STATE s INTO columns AND weights AND RETURNS HOW MANY THERE ARE. THE GOAL GOES TO moveGoalWeights.
+	private int buildRow(OwnSimulator ownSim, int s, long[] nextStates, double[] probabilities, int[] durations, double discount,
+			int[] columns, double[] weights) {
+		moveGoalWeights[s] = 0;
+		if(indexer.getPos(s) == N) { //NOTHING IS DONE IN THE GOAL
+			return 0;
+		}
+		int outcomes = ownSim.getMoveOutcomes(indexer.getState(s), nextStates, probabilities, durations);
+		int entries = 0;
+		for(int k = 0; k < outcomes; k++) {
+			if(probabilities[k] == 0) {
+				continue;
+			}
+			double weight = probabilities[k] * Math.pow(discount, durations[k]);
+			if(ownSim.isGoalState(nextStates[k])) {
+				moveGoalWeights[s] += weight;
+				continue;
+			}
+			int column = indexer.getIndex(nextStates[k]);
+			int entry = 0;
+			while(entry < entries && columns[entry] != column) {
+				entry++;
+			}
+			if(entry == entries) {
+				columns[entries] = column;
+				weights[entries++] = weight;
+			}
+			else {
+				weights[entry] += weight;
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * The expected discounted reward of doing action a in state s and following the values V afterwards
+	 *
+	 * @param s index of the state, not the goal
+	 * @param a index of the action in the action space
+	 * @param V the values of the states, 0 for the goal
+	 */
+	public double getQValue(int s, int a, double[] V) {
+		if(a == 0) {
+			double q = moveGoalWeights[s] * GOAL_REWARD;
+			for(int entry = moveRowStart[s]; entry < moveRowStart[s + 1]; entry++) {
+				q += moveWeights[entry] * V[moveColumns[entry]];
+			}
+			return q;
+		}
+		int next = nextConfigurations[(s / N) * numberOfActions + a] * N + s % N;
+		return actionWeights[a] * V[next];
+	}
+
+	public int getNumberOfEntries() {
+		return moveColumns.length;
+	}
+
+	public int getNumberOfActions() {
+		return numberOfActions;
+	}
+
+}
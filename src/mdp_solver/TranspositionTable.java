@@ -0,0 +1,64 @@
+package mdp_solver;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the first node expanded for every (state, time bucket), so MCTS can give nodes that reach the
+ * same state through different action orders the same children, and with them the same statistics.
+ *
+ * The table holds at most capacity entries and forgets the least recently used one when it is full. A
+ * forgotten entry only means that a later transposition of it is searched as a separate subtree.
+ */
+public class TranspositionTable {
+
+	private final int timeBucket;
+	private final Map<Long, Node> canonicalNodes;
+
+	/**
+	 * @param capacity the max number of nodes remembered
+	 * @param timeBucket number of time units that count as the same time, 1 only matches nodes at exactly the same time
+	 */
+	public TranspositionTable(int capacity, int timeBucket) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		if(timeBucket < 1) {
+			throw new IllegalArgumentException("Time bucket must be at least 1");
+		}
+		this.timeBucket = timeBucket;
+		canonicalNodes = Collections.synchronizedMap(new LinkedHashMap<Long, Node>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+				return size() > capacity;
+			}
+		});
+	}
+
+	//THE TIME BUCKET GOES IN THE BITS ABOVE THE PACKED STATE, SO DIFFERENT KEYS NEVER COLLIDE
+	private long key(Node node) {
+		return node.getPackedState() | ((long) (node.getTimeUnits() / timeBucket) << PackedState.BITS);
+	}
+
+	/**
+	 * Returns the node remembered for the state and time bucket of the given node. When there is none the
+	 * given node is remembered and returned.
+	 */
+	public Node getCanonical(Node node) {
+		return canonicalNodes.computeIfAbsent(key(node), key -> node);
+	}
+
+	public void put(Node node) {
+		canonicalNodes.put(key(node), node);
+	}
+
+	public void clear() {
+		canonicalNodes.clear();
+	}
+
+	public int size() {
+		return canonicalNodes.size();
+	}
+
+}
@@ -0,0 +1,182 @@
+package mdp_solver;
+
+import java.util.List;
+
+import problem.Action;
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * Solves the whole problem once at startup by backward induction over time, instead of searching
+ * before every step. The state space is finite and time only moves forward, so going from maxT down
+ * to 0 gives the exact best action for every state at every time:
+ *
+ *          V(t, s) = max over a of  sum over s' of  P(s' | s, a) * R(t + duration, s')
+ *
+ * where R is 100/t' when s' is the goal and t' <= maxT (the same reward the rollouts of MCTS give),
+ * V(t', s') for any other s' and 0 when the time is up. The time each outcome takes is the time the real
+ * simulator spends on it.
+ *
+ * After that every step is a lookup in the policy table.
+ */
+public class ValueIteration implements Planner {
+
+	private ProblemSpec ps;
+	private List<Action> actionSpace;
+	private OwnSimulator ownSim;
+	private StateIndexer indexer;
+	private int maxT;
+	private int N;
+	/** policy[t][index] is the index in actionSpace of the best action in the state at time t **/
+	private short[][] policy;
+	/** values[t % values.length] holds V(t, .) while the times after t are still needed **/
+	private double[][] values;
+	private long currentState;
+	private int currentTime;
+
+	/**
+	 * Solves the policy right away
+	 * 
+	 * @param verbose whether to print the size and the time of the solve
+	 */
+	public ValueIteration(ProblemSpec ps, List<Action> actionSpace, OwnSimulator ownSim, State startState, boolean verbose) {
+		if(actionSpace.size() > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many actions for the policy table: " + actionSpace.size());
+		}
+		this.ps = ps;
+		this.actionSpace = actionSpace;
+		this.ownSim = ownSim;
+		indexer = new StateIndexer(ps);
+		maxT = ps.getMaxT();
+		N = ps.getN();
+		currentState = PackedState.pack(startState, ps);
+		currentTime = 0;
+
+		long startTime = System.currentTimeMillis();
+		solve();
+		if(verbose) {
+			System.out.println("Value iteration: " + indexer.getNumberOfStates() + " states, " + (maxT + 1) + " time steps, "
+					+ (System.currentTimeMillis() - startTime) + " ms, expected reward "
+					+ values[0][indexer.getIndex(currentState)]);
+		}
+	}
+
+	private void solve() {
+		int numberOfStates = indexer.getNumberOfStates();
+		int numberOfActions = actionSpace.size();
+
+		//EVERY ACTION BUT A1 ONLY CHANGES THE CONFIGURATION, SO ITS SUCCESSOR IS FOUND ONCE PER CONFIGURATION
+		int[] durations = new int[numberOfActions];
+		int[] nextConfigurations = new int[indexer.getNumberOfConfigurations() * numberOfActions];
+		for(int a = 1; a < numberOfActions; a++) {
+			durations[a] = ownSim.getDuration(actionSpace.get(a));
+		}
+		for(int c = 0; c < indexer.getNumberOfConfigurations(); c++) {
+			long configurationState = indexer.getConfigurationState(c);
+			for(int a = 1; a < numberOfActions; a++) {
+				nextConfigurations[c * numberOfActions + a] = indexer.getConfiguration(ownSim.step(actionSpace.get(a), configurationState));
+			}
+		}
+
+		//THE OUTCOMES OF A1 DO NOT DEPEND ON THE TIME, SO THEY ARE ENUMERATED ONCE PER STATE, -1 STANDS FOR THE GOAL.
+		//THEIR PROBABILITIES ARE THE ROW OF THE MOVE PROBABILITY TABLE AT moveOffsets[s], -1 WHEN THERE IS NOT ENOUGH FUEL TO MOVE.
+		int[] moveOutcomes = new int[numberOfStates * ProblemSpec.CAR_MOVE_RANGE];
+		int[] moveOffsets = new int[numberOfStates];
+		int[] moveDurations = new int[ProblemSpec.CAR_MOVE_RANGE]; //THE SAME FOR EVERY STATE THAT CAN MOVE
+		long[] nextStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int maxDuration = 1;
+		for(int s = 0; s < numberOfStates; s++) {
+			long state = indexer.getState(s);
+			int outcomes = ownSim.getMoveOutcomes(state, nextStates, probabilities, moveDurations);
+			if(outcomes == 1) {
+				moveOffsets[s] = -1;
+				continue;
+			}
+			moveOffsets[s] = ownSim.getMoveProbabilityOffset(state);
+			for(int k = 0; k < outcomes; k++) {
+				moveOutcomes[s * ProblemSpec.CAR_MOVE_RANGE + k] = ownSim.isGoalState(nextStates[k]) ? -1 : indexer.getIndex(nextStates[k]);
+				maxDuration = Math.max(maxDuration, moveDurations[k]);
+			}
+		}
+		for(int a = 1; a < numberOfActions; a++) {
+			maxDuration = Math.max(maxDuration, durations[a]);
+		}
+
+		double[] moveProbs = ps.getMoveProbabilities();
+		policy = new short[maxT + 1][numberOfStates];
+		values = new double[maxDuration + 1][numberOfStates];
+		double[] empty = new double[numberOfStates]; //V IS 0 ONCE THE TIME IS UP
+		double[][] later = new double[maxDuration + 1][];
+		double[] goalRewards = new double[maxDuration + 1];
+		for(int t = maxT; t >= 0; t--) {
+			double[] value = values[t % values.length];
+			short[] actions = policy[t];
+			for(int d = 1; d <= maxDuration; d++) {
+				later[d] = (t + d > maxT) ? empty : values[(t + d) % values.length];
+				goalRewards[d] = (t + d > maxT) ? 0 : 100.0 / (t + d);
+			}
+			for(int configuration = 0; configuration < indexer.getNumberOfConfigurations(); configuration++) {
+				int first = indexer.getIndex(configuration, 1);
+				for(int pos = 1; pos < N; pos++) { //THE GOAL IS LEFT OUT, ITS VALUE STAYS 0
+					int s = first + pos - 1;
+
+					//A1 FIRST, SO IT WINS TIES
+					double bestValue;
+					int offset = moveOffsets[s];
+					if(offset < 0) {
+						bestValue = later[1][s];
+					}
+					else {
+						bestValue = 0;
+						int outcome = s * ProblemSpec.CAR_MOVE_RANGE;
+						for(int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+							double p = moveProbs[offset + k];
+							if(p > 0) {
+								int next = moveOutcomes[outcome + k];
+								bestValue += p * ((next < 0) ? goalRewards[moveDurations[k]] : later[moveDurations[k]][next]);
+							}
+						}
+					}
+					int bestAction = 0;
+
+					//THE OTHER ACTIONS DO NOT MOVE THE CAR, SO THEY NEVER REACH THE GOAL
+					int nextConfiguration = configuration * numberOfActions;
+					for(int a = 1; a < numberOfActions; a++) {
+						double actionValue = later[durations[a]][nextConfigurations[nextConfiguration + a] * N + pos - 1];
+						if(actionValue > bestValue) {
+							bestValue = actionValue;
+							bestAction = a;
+						}
+					}
+					value[s] = bestValue;
+					actions[s] = (short) bestAction;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The expected reward of a state at time 0
+	 */
+	double getValue(long state) {
+		return values[0][indexer.getIndex(state)];
+	}
+
+	@Override
+	public Action nextAction() {
+		if(ownSim.isGoalState(currentState)) {
+			return null;
+		}
+		//PAST maxT NOTHING IS WON ANY MORE, THE ACTIONS OF THE LAST STEP ARE AS GOOD AS ANY
+		int time = Math.min(currentTime, maxT);
+		return actionSpace.get(policy[time][indexer.getIndex(currentState)]);
+	}
+
+	@Override
+	public void advance(Action action, State resultState, int timeUnits) {
+		currentState = PackedState.pack(resultState, ps);
+		currentTime = timeUnits;
+	}
+
+}
@@ -19,6 +19,7 @@ public class Level {
      * Load the level number
      *
      * @param levelNumber number of level (1 to 5)
+     * @throws IllegalArgumentException if there is no such level
      */
     public Level(int levelNumber) {
         loadLevel(levelNumber);
@@ -76,8 +77,7 @@ public class Level {
                 loadActions(8);
                 break;
             default:
-                System.out.println("Invalid level number " + levelNumber);
-                System.exit(1);
+                throw new IllegalArgumentException("Invalid level number " + levelNumber);
         }
     }
 
@@ -1,7 +1,6 @@
 package problem;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
@@ -73,6 +72,17 @@ public class ProblemSpec {
     private int[][] fuelUsage;
     /** Slip probability for each terrain for 50% tire pressure **/
     private double[] slipProbability;
+    /** Terrain index of each cell, cell i of the environment map at i-1 **/
+    private int[] cellTerrainIndex;
+    /** Precomputed move probabilities P(K | terrain, car, driver, tire, pressure)
+     * One row of CAR_MOVE_RANGE entries for each combination, a row starts at
+     * getMoveProbabilityOffset(...) */
+    private double[] moveProbabilities;
+    /** Cumulative sums of the rows in moveProbabilities, same layout **/
+    private double[] moveCumulativeProbabilities;
+    /** The cell each move outcome ends in, CAR_MOVE_RANGE entries per cell
+     * starting at pos * CAR_MOVE_RANGE. Slip and breakdown stay in the cell */
+    private int[] moveSuccessors;
 
     /**
      * Load problem spec from input file
@@ -219,18 +229,19 @@ public class ProblemSpec {
             s.close();
             input.close();
 
+            // 12. Everything the simulators need per move
+            buildMoveProbabilityTable();
+            buildMoveSuccessorTable();
+
         } catch (InputMismatchException e) {
-            System.out.println(e.getMessage());
-            System.exit(1);
+            throw new IOException(e.getMessage(), e);
         } catch (NoSuchElementException e) {
-            System.out.println("Not enough tokens on input file - line " + lineNo);
-            System.exit(2);
+            throw new IOException("Not enough tokens on input file - line " + lineNo, e);
         } catch (NullPointerException e) {
-            System.out.format("Input file - line %d expected, but file ended.", lineNo);
-            System.exit(3);
-        } catch (FileNotFoundException e) {
-            System.out.println(e.getMessage());
-            System.exit(4);
+            throw new IOException(String.format("Input file - line %d expected, but file ended.", lineNo), e);
+        } catch (IllegalArgumentException e) {
+            // unknown names and numbers that do not parse
+            throw new IOException(e.getMessage() + " - line " + lineNo, e);
         }
     }
 
@@ -260,6 +271,134 @@ public class ProblemSpec {
         return sb.toString();
     }
 
+    /**
+     * Compute the move probabilities for every combination of terrain, car,
+     * driver, tire model and tire pressure once, so the simulators only have
+     * to look them up. Same formula as the one the simulator used to apply on
+     * every move:
+     *
+     *          P(K | C, D, Ti, Te, Pressure)
+     */
+    private void buildMoveProbabilityTable() {
+
+        cellTerrainIndex = new int[N];
+        for (int i = 0; i < N; i++) {
+            cellTerrainIndex[i] = getTerrainIndex(environmentMap[i]);
+        }
+
+        int combinations = NT * CT * DT * NUM_TYRE_MODELS * TIRE_PRESSURE_LEVELS;
+        moveProbabilities = new double[combinations * CAR_MOVE_RANGE];
+        moveCumulativeProbabilities = new double[combinations * CAR_MOVE_RANGE];
+
+        // calculate priors
+        double priorK = 1.0 / CAR_MOVE_RANGE;
+        double priorCar = 1.0 / CT;
+        double priorDriver = 1.0 / DT;
+        double priorTire = 1.0 / NUM_TYRE_MODELS;
+        double priorTerrain = 1.0 / NT;
+        double priorPressure = 1.0 / TIRE_PRESSURE_LEVELS;
+
+        Tire[] tires = Tire.values();
+        TirePressure[] pressures = TirePressure.values();
+        for (int terrain = 0; terrain < NT; terrain++) {
+            for (int car = 0; car < CT; car++) {
+                double[] pKGivenCar = carMoveProbability.get(carOrder.get(car));
+                for (int driver = 0; driver < DT; driver++) {
+                    double[] pKGivenDriver = driverMoveProbability.get(driverOrder.get(driver));
+                    for (int tire = 0; tire < NUM_TYRE_MODELS; tire++) {
+                        double[] pKGivenTire = tireModelMoveProbability.get(tires[tire]);
+                        for (int pressure = 0; pressure < TIRE_PRESSURE_LEVELS; pressure++) {
+                            double[] pKGivenPressureTerrain = convertSlipProbs(
+                                    slipProbability[terrain], pressures[pressure]);
+                            int offset = getMoveProbabilityOffset(terrain, car,
+                                    driver, tire, pressure);
+
+                            // bayes rule to get probability of parameter given k,
+                            // then the conditional probability formula on the
+                            // assignment sheet
+                            double kProbsSum = 0;
+                            double kProb;
+                            for (int k = 0; k < CAR_MOVE_RANGE; k++) {
+                                kProb = ((pKGivenCar[k] * priorCar) / priorK)
+                                        * ((pKGivenDriver[k] * priorDriver) / priorK)
+                                        * ((pKGivenTire[k] * priorTire) / priorK)
+                                        * ((pKGivenPressureTerrain[k] * (priorTerrain * priorPressure)) / priorK)
+                                        * priorK;
+                                kProbsSum += kProb;
+                                moveProbabilities[offset + k] = kProb;
+                            }
+
+                            // Normalize
+                            double pSum = 0;
+                            for (int k = 0; k < CAR_MOVE_RANGE; k++) {
+                                moveProbabilities[offset + k] /= kProbsSum;
+                                pSum += moveProbabilities[offset + k];
+                                moveCumulativeProbabilities[offset + k] = pSum;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Precompute the cell every outcome of a move ends in from every cell,
+     * clamped to [1, N]
+     */
+    private void buildMoveSuccessorTable() {
+        moveSuccessors = new int[(N + 1) * CAR_MOVE_RANGE];
+        for (int pos = 1; pos <= N; pos++) {
+            for (int k = 0; k < CAR_MOVE_RANGE; k++) {
+                int move = convertIndexIntoMove(k);
+                int next = pos;
+                if (move != SLIP && move != BREAKDOWN) {
+                    next = Math.max(1, Math.min(N, pos + move));
+                }
+                moveSuccessors[pos * CAR_MOVE_RANGE + k] = next;
+            }
+        }
+    }
+
+    /**
+     * Convert the probability of slipping on a given terrain with 50% tire
+     * pressure into a probability list, of move distance versus current
+     * terrain and tire pressure.
+     *
+     * @param slipProb probability of slipping on current terrain and 50%
+     *                 tire pressure
+     * @param pressure the tire pressure
+     * @return list of move probabilities given current terrain and pressure
+     */
+    private double[] convertSlipProbs(double slipProb, TirePressure pressure) {
+
+        // Adjust slip probability based on tire pressure
+        if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
+            slipProb *= 2;
+        } else if (pressure == TirePressure.ONE_HUNDRED_PERCENT) {
+            slipProb *= 3;
+        }
+        // Make sure new probability is not above max
+        if (slipProb > MAX_SLIP_PROBABILITY) {
+            slipProb = MAX_SLIP_PROBABILITY;
+        }
+
+        // for each terrain, all other action probabilities are uniform over
+        // remaining probability
+        double[] kProbs = new double[CAR_MOVE_RANGE];
+        double leftOver = 1 - slipProb;
+        double otherProb = leftOver / (CAR_MOVE_RANGE - 1);
+        for (int i = 0; i < CAR_MOVE_RANGE; i++) {
+            if (i == getIndexOfMove(SLIP)) {
+                kProbs[i] = slipProb;
+            } else {
+                kProbs[i] = otherProb;
+            }
+        }
+
+        return kProbs;
+    }
+
     /**
      * Parse a line of the below form and add entry to map:
      *
@@ -485,6 +624,66 @@ public class ProblemSpec {
         return slipProbability;
     }
 
+    /**
+     * Get the terrain index of a cell
+     *
+     * @param cell the cell, 1 indexed like the car position
+     * @return index of the cell's terrain as it appeared in input
+     */
+    public int getTerrainIndexOfCell(int cell) {
+        return cellTerrainIndex[cell - 1];
+    }
+
+    /**
+     * The precomputed move probabilities, CAR_MOVE_RANGE entries per
+     * combination of terrain, car, driver, tire model and tire pressure.
+     * Shared, do not modify.
+     *
+     * @return the flat move probability table
+     */
+    public double[] getMoveProbabilities() {
+        return moveProbabilities;
+    }
+
+    /**
+     * The cumulative move probabilities, same layout as getMoveProbabilities().
+     * Shared, do not modify.
+     *
+     * @return the flat cumulative move probability table
+     */
+    public double[] getMoveCumulativeProbabilities() {
+        return moveCumulativeProbabilities;
+    }
+
+    /**
+     * The cell each outcome of a move ends in, CAR_MOVE_RANGE entries per
+     * cell: outcome k from cell pos is at pos * CAR_MOVE_RANGE + k.
+     * Shared, do not modify.
+     *
+     * @return the flat move successor table
+     */
+    public int[] getMoveSuccessors() {
+        return moveSuccessors;
+    }
+
+    /**
+     * Return where the move probabilities of a combination start in the
+     * tables returned by getMoveProbabilities() and
+     * getMoveCumulativeProbabilities().
+     *
+     * @param terrain terrain index as it appeared in input
+     * @param car car index as it appeared in input
+     * @param driver driver index as it appeared in input
+     * @param tire Tire ordinal
+     * @param pressure TirePressure ordinal
+     * @return offset of the first of the CAR_MOVE_RANGE probabilities
+     */
+    public int getMoveProbabilityOffset(int terrain, int car, int driver,
+                                        int tire, int pressure) {
+        return ((((terrain * CT + car) * DT + driver) * NUM_TYRE_MODELS + tire)
+                * TIRE_PRESSURE_LEVELS + pressure) * CAR_MOVE_RANGE;
+    }
+
     /**
      * Get the first car type in input file
      *
@@ -214,24 +214,20 @@ public class Simulator {
     }
 
     /**
-     * Return the move distance by sampling from conditional probability
-     * distribution.
-     *
-     * N.B. this formula is not at all optimized for performance, so be wary if
-     * trying to use it for finding a policy
+     * Return the move distance by sampling from the conditional probability
+     * distribution precomputed by the problem spec.
      *
      * @return the move distance in range [-4, 5] or SLIP or BREAKDOWN
      */
     private int sampleMoveDistance() {
 
-        double[] moveProbs = getMoveProbs();
+        double[] cumulative = ps.getMoveCumulativeProbabilities();
+        int offset = getMoveProbabilityOffset();
 
         double p = Math.random();
-        double pSum = 0;
         int move = 0;
         for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            pSum += moveProbs[k];
-            if (p <= pSum) {
+            if (p <= cumulative[offset + k]) {
                 move = ps.convertIndexIntoMove(k);
                 break;
             }
@@ -240,134 +236,20 @@ public class Simulator {
     }
 
     /**
-     * Calculate the conditional move probabilities for the current state.
+     * Find the conditional move probabilities for the current state in the
+     * table of the problem spec.
      *
      *          P(K | C, D, Ti, Te, Pressure)
      *
-     * @return list of move probabilities
-     */
-    private double[] getMoveProbs() {
-
-        // get parameters of current state
-        Terrain terrain = ps.getEnvironmentMap()[currentState.getPos() - 1];
-        int terrainIndex = ps.getTerrainIndex(terrain);
-        String car = currentState.getCarType();
-        String driver = currentState.getDriver();
-        Tire tire = currentState.getTireModel();
-
-        // calculate priors
-        double priorK = 1.0 / ProblemSpec.CAR_MOVE_RANGE;
-        double priorCar = 1.0 / ps.getCT();
-        double priorDriver = 1.0 / ps.getDT();
-        double priorTire = 1.0 / ProblemSpec.NUM_TYRE_MODELS;
-        double priorTerrain = 1.0 / ps.getNT();
-        double priorPressure = 1.0 / ProblemSpec.TIRE_PRESSURE_LEVELS;
-
-        // get probabilities of k given parameter
-        double[] pKGivenCar = ps.getCarMoveProbability().get(car);
-        double[] pKGivenDriver = ps.getDriverMoveProbability().get(driver);
-        double[] pKGivenTire = ps.getTireModelMoveProbability().get(tire);
-        double pSlipGivenTerrain = ps.getSlipProbability()[terrainIndex];
-        double[] pKGivenPressureTerrain = convertSlipProbs(pSlipGivenTerrain);
-
-        // use bayes rule to get probability of parameter given k
-        double[] pCarGivenK = bayesRule(pKGivenCar, priorCar, priorK);
-        double[] pDriverGivenK = bayesRule(pKGivenDriver, priorDriver, priorK);
-        double[] pTireGivenK = bayesRule(pKGivenTire, priorTire, priorK);
-        double[] pPressureTerrainGivenK = bayesRule(pKGivenPressureTerrain,
-                (priorTerrain * priorPressure), priorK);
-
-        // use conditional probability formula on assignment sheet to get what
-        // we want (but what is it that we want....)
-        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
-        double kProbsSum = 0;
-        double kProb;
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            kProb = magicFormula(pCarGivenK[k], pDriverGivenK[k],
-                    pTireGivenK[k], pPressureTerrainGivenK[k], priorK);
-            kProbsSum += kProb;
-            kProbs[k] = kProb;
-        }
-
-        // Normalize
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            kProbs[k] /= kProbsSum;
-        }
-
-        return kProbs;
-    }
-
-    /**
-     * Convert the probability of slipping on a given terrain with 50% tire
-     * pressure into a probability list, of move distance versus current
-     * terrain and tire pressure.
-     *
-     * @param slipProb probability of slipping on current terrain and 50%
-     *                 tire pressure
-     * @return list of move probabilities given current terrain and pressure
-     */
-    private double[] convertSlipProbs(double slipProb) {
-
-        // Adjust slip probability based on tire pressure
-        TirePressure pressure = currentState.getTirePressure();
-        if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
-            slipProb *= 2;
-        } else if (pressure == TirePressure.ONE_HUNDRED_PERCENT) {
-            slipProb *= 3;
-        }
-        // Make sure new probability is not above max
-        if (slipProb > ProblemSpec.MAX_SLIP_PROBABILITY) {
-            slipProb = ProblemSpec.MAX_SLIP_PROBABILITY;
-        }
-
-        // for each terrain, all other action probabilities are uniform over
-        // remaining probability
-        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
-        double leftOver = 1 - slipProb;
-        double otherProb = leftOver / (ProblemSpec.CAR_MOVE_RANGE - 1);
-        for (int i = 0; i < ProblemSpec.CAR_MOVE_RANGE; i++) {
-            if (i == ps.getIndexOfMove(ProblemSpec.SLIP)) {
-                kProbs[i] = slipProb;
-            } else {
-                kProbs[i] = otherProb;
-            }
-        }
-
-        return kProbs;
-    }
-
-    /**
-     * Apply bayes rule to all values in cond probs list.
-     *
-     * @param condProb list of P(B|A)
-     * @param priorA prior probability of parameter A
-     * @param priorB prior probability of parameter B
-     * @return list of P(A|B)
-     */
-    private double[] bayesRule(double[] condProb, double priorA, double priorB) {
-
-        double[] swappedProb = new double[condProb.length];
-
-        for (int i = 0; i < condProb.length; i++) {
-            swappedProb[i] = (condProb[i] * priorA) / priorB;
-        }
-        return swappedProb;
-    }
-
-    /**
-     * Conditional probability formula from assignment 2 sheet
-     *
-     * @param pA P(A | E)
-     * @param pB P(B | E)
-     * @param pC P(C | E)
-     * @param pD P(D | E)
-     * @param priorE P(E)
-     * @return numerator of the P(E | A, B, C, D) formula (still need to divide
-     *      by sum over E)
+     * @return offset of the first of the CAR_MOVE_RANGE move probabilities
      */
-    private double magicFormula(double pA, double pB, double pC, double pD,
-                               double priorE) {
-        return pA * pB * pC * pD * priorE;
+    private int getMoveProbabilityOffset() {
+        int terrainIndex = ps.getTerrainIndexOfCell(currentState.getPos());
+        int carIndex = ps.getCarIndex(currentState.getCarType());
+        int driverIndex = ps.getDriverIndex(currentState.getDriver());
+        return ps.getMoveProbabilityOffset(terrainIndex, carIndex, driverIndex,
+                currentState.getTireModel().ordinal(),
+                currentState.getTirePressure().ordinal());
     }
 
     /**
@@ -378,12 +260,11 @@ public class Simulator {
     private int getFuelConsumption() {
 
         // get parameters of current state
-        Terrain terrain = ps.getEnvironmentMap()[currentState.getPos() - 1];
         String car = currentState.getCarType();
         TirePressure pressure = currentState.getTirePressure();
 
         // get fuel consumption
-        int terrainIndex = ps.getTerrainIndex(terrain);
+        int terrainIndex = ps.getTerrainIndexOfCell(currentState.getPos());
         int carIndex = ps.getCarIndex(car);
         int fuelConsumption = ps.getFuelUsage()[terrainIndex][carIndex];
 
@@ -0,0 +1,49 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+
+/**
+ * The outcome nodes of an A1 node are on the clock of its outcome durations. A slip and a breakdown used to
+ * take their recovery or repair time in the durations and one more step in the time of the node.
+ */
+public class A1NodeTest {
+
+	private static final int STATES = 200;
+
+	@Test
+	public void outcomeTimesMatchTheirDurations() throws IOException {
+		ProblemSpec ps = new ProblemSpec("input_lvl4.txt");
+		MDPSolver mdp = new MDPSolver(ps, null);
+		OwnSimulator ownSim = new OwnSimulator(ps, mdp);
+		StateIndexer indexer = new StateIndexer(ps);
+		Random random = new Random(9);
+		int slips = 0;
+		for(int n = 0; n < STATES; n++) {
+			long state = indexer.getState(random.nextInt(indexer.getNumberOfStates()));
+			if(ownSim.isGoalState(state)) {
+				continue;
+			}
+			Node parent = new Node(state, null, null, mdp, false, null);
+			A1Node a1Node = new A1Node(state, parent, mdp.getActionSpace().get(ActionSpace.MOVE), mdp,
+					ownSim.getMoveProbabilityOffset(state), ownSim.getFuelConsumption(state));
+			List<Node> outcomes = a1Node.getOutcomeNodes();
+			for(int i = 0; i < outcomes.size(); i++) {
+				assertEquals("outcome " + i, parent.getTimeUnits() + a1Node.getOutcomeDuration(i), outcomes.get(i).getTimeUnits());
+				if(a1Node.getOutcomeDuration(i) == ps.getSlipRecoveryTime()) {
+					slips++;
+				}
+			}
+		}
+		assertTrue("no slip or breakdown outcome was checked", slips > 0);
+	}
+
+}
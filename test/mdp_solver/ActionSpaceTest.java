@@ -0,0 +1,66 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+
+/**
+ * The packed transitions of ActionSpace against OwnSimulator.step, which goes through the Action objects
+ */
+public class ActionSpaceTest {
+
+	private static final int STATES = 20000;
+
+	@Test
+	public void level1MatchesOwnSimulator() throws IOException {
+		assertMatchesOwnSimulator("input_lvl1.txt");
+	}
+
+	@Test
+	public void level2MatchesOwnSimulator() throws IOException {
+		assertMatchesOwnSimulator("input_lvl2.txt");
+	}
+
+	@Test
+	public void level3MatchesOwnSimulator() throws IOException {
+		assertMatchesOwnSimulator("input_lvl3.txt");
+	}
+
+	@Test
+	public void level4MatchesOwnSimulator() throws IOException {
+		assertMatchesOwnSimulator("input_lvl4.txt");
+	}
+
+	private static void assertMatchesOwnSimulator(String input) throws IOException {
+		ProblemSpec ps = new ProblemSpec(input);
+		MDPSolver mdp = new MDPSolver(ps, null);
+		ActionSpace actionSpace = mdp.getActionSpace();
+		OwnSimulator ownSim = new OwnSimulator(ps, mdp);
+		for(int a = 0; a < actionSpace.size(); a++) {
+			assertEquals(a, actionSpace.getIndex(actionSpace.get(a)));
+			if(a != ActionSpace.MOVE) {
+				assertEquals(input + " action " + a, ownSim.getDuration(actionSpace.get(a)), actionSpace.getDuration(a));
+			}
+		}
+		Random random = new Random(4);
+		for(int i = 0; i < STATES; i++) {
+			long state = PackedState.pack(1 + random.nextInt(ps.getN()), false, false, random.nextInt(ps.getCT()),
+					random.nextInt(ProblemSpec.FUEL_MAX + 1), random.nextInt(ProblemSpec.TIRE_PRESSURE_LEVELS),
+					random.nextInt(ps.getDT()), random.nextInt(ProblemSpec.NUM_TYRE_MODELS));
+			assertFalse(actionSpace.isNoOp(ActionSpace.MOVE, state));
+			for(int a = 1; a < actionSpace.size(); a++) {
+				long expected = ownSim.step(actionSpace.get(a), state);
+				String message = input + " action " + actionSpace.get(a).getText() + " state " + state;
+				assertEquals(message, expected, actionSpace.step(a, state));
+				assertEquals(message, expected == state, actionSpace.isNoOp(a, state));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+
+/**
+ * The sampled frequencies of the alias tables against the distributions they are built from
+ */
+public class AliasTableTest {
+
+	private static final int SAMPLES = 200000;
+
+	@Test
+	public void moveOutcomesFollowTheMoveProbabilities() throws IOException {
+		ProblemSpec ps = new ProblemSpec("input_lvl4.txt");
+		double[] moveProbs = ps.getMoveProbabilities();
+		AliasTable table = new AliasTable(moveProbs, ProblemSpec.CAR_MOVE_RANGE);
+		Random random = new Random(1);
+		int rows = moveProbs.length / ProblemSpec.CAR_MOVE_RANGE;
+		//EVERY ROW WOULD TAKE TOO LONG, 40 OF THEM SPREAD OVER THE TABLE
+		for(int row = 0; row < rows; row += Math.max(1, rows / 40)) {
+			assertFrequencies(table, moveProbs, row * ProblemSpec.CAR_MOVE_RANGE, random);
+		}
+	}
+
+	@Test
+	public void edgeCaseDistributions() {
+		double[] distributions = {
+				1, 0, 0, 0,
+				0, 0, 0, 1,
+				0.25, 0.25, 0.25, 0.25,
+				0.5, 0, 0.5, 0,
+				0.999, 0.001, 0, 0
+		};
+		AliasTable table = new AliasTable(distributions, 4);
+		assertEquals(4, table.getWidth());
+		Random random = new Random(2);
+		for(int offset = 0; offset < distributions.length; offset += 4) {
+			assertFrequencies(table, distributions, offset, random);
+		}
+	}
+
+	@Test
+	public void impossibleOutcomesAreNeverSampled() {
+		double[] distributions = {0, 0.3, 0, 0.7, 0};
+		AliasTable table = new AliasTable(distributions, 5);
+		Random random = new Random(3);
+		for(int i = 0; i < SAMPLES; i++) {
+			int outcome = table.sample(0, random);
+			assertTrue(outcome == 1 || outcome == 3);
+		}
+	}
+
+	//EVERY FREQUENCY WITHIN 5 STANDARD DEVIATIONS OF ITS PROBABILITY
+	private static void assertFrequencies(AliasTable table, double[] distributions, int offset, Random random) {
+		int width = table.getWidth();
+		int[] counts = new int[width];
+		for(int i = 0; i < SAMPLES; i++) {
+			counts[table.sample(offset, random)]++;
+		}
+		for(int k = 0; k < width; k++) {
+			double p = distributions[offset + k];
+			double sigma = Math.sqrt(p * (1 - p) / SAMPLES);
+			assertEquals("outcome " + k + " at offset " + offset, p, (double) counts[k] / SAMPLES, 5 * sigma + 1e-9);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CompactTreeTest {
+
+	//MORE ACTIONS THAN A byte HOLDS, LIKE A LEVEL WITH MANY CARS AND DRIVERS
+	@Test
+	public void manyChildrenKeepTheirActions() {
+		CompactTree tree = new CompactTree();
+		int root = tree.setRoot(7);
+		int count = 300;
+		int first = tree.addChildren(root, count);
+		for(int a = 0; a < count; a++) {
+			tree.setChild(first + a, a, a);
+		}
+		assertEquals(count, tree.getChildCount(root));
+		for(int a = 0; a < count; a++) {
+			assertEquals(a, tree.getAction(first + a));
+			assertEquals(root, tree.getParent(first + a));
+		}
+		assertTrue(tree.isChance(first));
+
+		int outcomes = tree.addChildren(first, 12);
+		for(int k = 0; k < 12; k++) {
+			tree.setChild(outcomes + k, k, -1 - k);
+			assertEquals(-1 - k, tree.getAction(outcomes + k));
+		}
+	}
+
+	@Test
+	public void nodesSpanChunks() {
+		CompactTree tree = new CompactTree();
+		int parent = tree.setRoot(0);
+		for(int i = 0; i < 10000; i++) {
+			int child = tree.addChildren(parent, 20);
+			tree.setChild(child, i, 0);
+			tree.addReward(child, 1.5);
+			assertEquals(i, tree.getState(child));
+			assertEquals(parent, tree.getParent(child));
+			parent = child;
+		}
+		assertEquals(1 + 10000 * 20, tree.size());
+		assertEquals(1.5, tree.getValueSum(parent), 0);
+		assertEquals(1, tree.getVisits(parent));
+	}
+
+}
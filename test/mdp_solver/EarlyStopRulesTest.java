@@ -0,0 +1,53 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class EarlyStopRulesTest {
+
+	private static final double CONFIDENCE = 0.99;
+	private static final double UNKNOWN = Double.POSITIVE_INFINITY;
+
+	@Test
+	public void aSingleChildIsDecided() {
+		assertTrue(isDecided(new int[] {0}, new double[] {0}, UNKNOWN));
+	}
+
+	@Test
+	public void anUnvisitedChildIsNotDecided() {
+		assertFalse(isDecided(new int[] {1000, 0}, new double[] {900, 0}, 0));
+	}
+
+	@Test
+	public void separatedIntervalsDecideWithoutKnowingTheRemainingIterations() {
+		assertTrue(isDecided(new int[] {1000, 1000}, new double[] {900, 100}, UNKNOWN));
+	}
+
+	@Test
+	public void closeChildrenAreNotDecidedWithoutKnowingTheRemainingIterations() {
+		assertFalse(isDecided(new int[] {1000, 1000}, new double[] {510, 490}, UNKNOWN));
+	}
+
+	//THE LEADER HAS FAR MORE VISITS THAN THE CHILD CAN CATCH UP WITH, BUT THE CHILD CAN STILL OVERTAKE IT ON VALUE
+	@Test
+	public void beingOutOfVisitsDoesNotDecide() {
+		assertFalse(isDecided(new int[] {1000, 10}, new double[] {500, 4}, 100));
+	}
+
+	@Test
+	public void aChildThatCanNotCatchUpOnValueIsOut() {
+		assertTrue(isDecided(new int[] {100, 100}, new double[] {60, 50}, 5));
+		assertFalse(isDecided(new int[] {100, 100}, new double[] {60, 50}, 50));
+	}
+
+	private static boolean isDecided(int[] visits, double[] valueSums, double remainingVisits) {
+		double[] maxRewards = new double[visits.length];
+		Arrays.fill(maxRewards, 1);
+		return EarlyStopRules.isDecided(visits.length, visits, valueSums, maxRewards, remainingVisits, CONFIDENCE);
+	}
+
+}
@@ -0,0 +1,120 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import problem.Action;
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * Level 2 is where every rollout from near the start is worth 0, so the root's children all tie and the
+ * search has to keep exploring A1 and fall back on it.
+ */
+public class MCTSTest {
+
+	private static final String INPUT = "examples/level_2/input_lvl2.txt";
+	private static final int ITERATIONS = 2000;
+	private static final int ROLLOUTS_PER_LEAF = 4;
+
+	private MDPSolver mdp;
+
+	@Test
+	public void tiesGoToTheMostVisitedAndThenToA1() throws IOException {
+		MCTS mcts = newSearch(newConfig());
+		ActionSpace actionSpace = mdp.getActionSpace();
+		Map<Action, double[]> statistics = new HashMap<>();
+		for(int a = actionSpace.size() - 1; a >= 0; a--) {
+			statistics.put(actionSpace.get(a), new double[] {0, 10});
+		}
+		assertEquals(actionSpace.get(ActionSpace.MOVE), mcts.selectBestAction(statistics));
+
+		statistics.put(actionSpace.get(2), new double[] {0, 11});
+		assertEquals(actionSpace.get(2), mcts.selectBestAction(statistics));
+
+		statistics.put(actionSpace.get(1), new double[] {1, 10});
+		assertEquals(actionSpace.get(1), mcts.selectBestAction(statistics));
+	}
+
+	//A1 USED TO GET ONE VISIT AND NO EXPLORATION AFTER IT, AND LOST EVERY TIE
+	@Test
+	public void a1GetsItsShareOfTheVisits() throws IOException {
+		MCTS mcts = newSearch(newConfig());
+		mcts.search();
+		Map<Action, double[]> statistics = new HashMap<>();
+		mcts.collectRootStatistics(statistics);
+		double a1Visits = statistics.get(mdp.getActionSpace().get(ActionSpace.MOVE))[1];
+		assertTrue("A1 visits " + a1Visits, a1Visits >= ITERATIONS / (2.0 * statistics.size()));
+	}
+
+	//WITH EXACT ROLLOUT VALUES EVERY ROLLOUT OF A LEAF IS THE SAME, THE LEAF USED TO BE COUNTED rolloutsPerLeaf TIMES ANYWAY
+	@Test
+	public void exactRolloutValuesAreBackedUpOncePerLeaf() throws IOException {
+		assertRootVisitsPerIteration(newConfig(), 1);
+		SearchConfig sampled = newConfig();
+		sampled.setRolloutValueMaxBytes(0);
+		assertRootVisitsPerIteration(sampled, ROLLOUTS_PER_LEAF);
+	}
+
+	private void assertRootVisitsPerIteration(SearchConfig config, int visitsPerIteration) throws IOException {
+		config.setRolloutsPerLeaf(ROLLOUTS_PER_LEAF);
+		config.getBudget().setEarlyStop(false);
+		MCTS mcts = newSearch(config);
+		mcts.search();
+		Map<Action, double[]> statistics = new HashMap<>();
+		mcts.collectRootStatistics(statistics);
+		double visits = 0;
+		for(double[] statistic : statistics.values()) {
+			visits += statistic[1];
+		}
+		//THE FIRST ITERATION ROLLS OUT FROM THE ROOT ITSELF, BEFORE IT HAS CHILDREN
+		assertEquals((double) (ITERATIONS - 1) * visitsPerIteration, visits, 0);
+	}
+
+	//THE WHOLE EPISODE USED TO TOGGLE BETWEEN TWO TIRE PRESSURES UNTIL maxT
+	@Test
+	public void level2RunKeepsMoving() throws IOException {
+		ProblemSpec ps = new ProblemSpec(INPUT);
+		File output = File.createTempFile("level2", ".txt");
+		output.deleteOnExit();
+		new MDPSolver(ps, output.getPath(), newConfig()).solve();
+		List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+		int steps = 0;
+		int moves = 0;
+		for(String line : lines) {
+			if(line.endsWith(")") && !line.startsWith("start")) {
+				steps++;
+				if(line.endsWith("(A1)")) {
+					moves++;
+				}
+			}
+		}
+		assertTrue(moves + " of " + steps + " actions are A1", steps > 0 && 2 * moves >= steps);
+	}
+
+	private static SearchConfig newConfig() {
+		SearchConfig config = new SearchConfig();
+		config.setVerbose(false);
+		config.getBudget().setTimeMillis(0);
+		config.getBudget().setMaxIterations(ITERATIONS);
+		return config;
+	}
+
+	private MCTS newSearch(SearchConfig config) throws IOException {
+		ProblemSpec ps = new ProblemSpec(INPUT);
+		mdp = new MDPSolver(ps, null, config);
+		Node root = new Node(State.getStartState(ps.getFirstCarType(), ps.getFirstDriver(), ps.getFirstTireModel()), null, null, mdp, false, null);
+		return new MCTS(ps, mdp.getActionSpace(), mdp, root, new OwnSimulator(ps, mdp));
+	}
+
+}
@@ -0,0 +1,86 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+
+/**
+ * Sampling a move from the cumulative table at the ends of [0, 1), where a move with probability 0 used to
+ * be picked: the first one at 0, and move 0 whenever rounding left the last sum below the random number.
+ */
+public class OwnSimulatorTest {
+
+	private static final int STATES = 5000;
+
+	@Test
+	public void level1NeverSamplesAnImpossibleMove() throws IOException {
+		assertNeverSamplesImpossibleMoves("examples/level_1/input_lvl1.txt");
+	}
+
+	//MOVING BACK 4 AND BREAKING DOWN CAN NOT HAPPEN, AND THE OTHER TEN SUM TO JUST BELOW 1
+	@Test
+	public void impossibleFirstAndLastMovesAreNeverSampled() throws IOException {
+		List<String> lines = Files.readAllLines(Paths.get("examples/level_1/input_lvl1.txt"), StandardCharsets.UTF_8);
+		for(int i = 0; i < lines.size(); i++) {
+			int colon = lines.get(i).indexOf(':');
+			if(colon > 0 && lines.get(i).substring(colon + 1).trim().split("\\s+").length == ProblemSpec.CAR_MOVE_RANGE) {
+				lines.set(i, lines.get(i).substring(0, colon + 1) + "0 0.1 0.1 0.1 0.1 0.1 0.1 0.1 0.1 0.1 0.1 0");
+			}
+		}
+		File input = File.createTempFile("level1", ".txt");
+		input.deleteOnExit();
+		Files.write(input.toPath(), lines, StandardCharsets.UTF_8);
+		assertNeverSamplesImpossibleMoves(input.getPath());
+	}
+
+	@Test
+	public void level4NeverSamplesAnImpossibleMove() throws IOException {
+		assertNeverSamplesImpossibleMoves("input_lvl4.txt");
+	}
+
+	private static void assertNeverSamplesImpossibleMoves(String input) throws IOException {
+		ProblemSpec ps = new ProblemSpec(input);
+		SearchConfig config = new SearchConfig();
+		config.setAliasSampling(false);
+		MDPSolver mdp = new MDPSolver(ps, null, config);
+		double[] moveProbs = ps.getMoveProbabilities();
+		StateIndexer indexer = new StateIndexer(ps);
+		Random states = new Random(7);
+		for(double p : new double[] { 0, Math.nextDown(1.0) }) {
+			OwnSimulator ownSim = new OwnSimulator(ps, mdp, new FixedRandom(p));
+			for(int i = 0; i < STATES; i++) {
+				long state = indexer.getState(states.nextInt(indexer.getNumberOfStates()));
+				int k = ownSim.sampleMoveIndex(state);
+				assertTrue(input + " p " + p + " move " + k, moveProbs[ownSim.getMoveProbabilityOffset(state) + k] > 0);
+			}
+		}
+	}
+
+	private static class FixedRandom extends Random {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double value;
+
+		FixedRandom(double value) {
+			this.value = value;
+		}
+
+		@Override
+		public double nextDouble() {
+			return value;
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+import problem.Tire;
+import problem.TirePressure;
+import simulator.State;
+
+/**
+ * The packed states against simulator.State, which they mirror
+ */
+public class PackedStateTest {
+
+	private static final String INPUT = "examples/level_3/input_lvl3.txt";
+
+	@Test
+	public void everyFieldSurvivesPackAndUnpack() {
+		Random random = new Random(1);
+		for(int i = 0; i < 100000; i++) {
+			int pos = 1 + random.nextInt(0xFFFF);
+			boolean slip = random.nextBoolean();
+			boolean breakdown = random.nextBoolean();
+			int car = random.nextInt(256);
+			int fuel = random.nextInt(ProblemSpec.FUEL_MAX + 1);
+			int pressure = random.nextInt(ProblemSpec.TIRE_PRESSURE_LEVELS);
+			int driver = random.nextInt(256);
+			int tire = random.nextInt(ProblemSpec.NUM_TYRE_MODELS);
+			long state = PackedState.pack(pos, slip, breakdown, car, fuel, pressure, driver, tire);
+			assertEquals(pos, PackedState.getPos(state));
+			assertEquals(slip, PackedState.isInSlipCondition(state));
+			assertEquals(breakdown, PackedState.isInBreakdownCondition(state));
+			assertEquals(car, PackedState.getCar(state));
+			assertEquals(fuel, PackedState.getFuel(state));
+			assertEquals(pressure, PackedState.getPressure(state));
+			assertEquals(driver, PackedState.getDriver(state));
+			assertEquals(tire, PackedState.getTire(state));
+			assertEquals(0, state >>> PackedState.BITS);
+		}
+	}
+
+	@Test
+	public void simulatorStatesSurvivePackAndUnpack() throws IOException {
+		ProblemSpec ps = new ProblemSpec(INPUT);
+		Random random = new Random(2);
+		for(int i = 0; i < 10000; i++) {
+			State state = randomState(ps, random);
+			long packed = PackedState.pack(state, ps);
+			assertSameState(state, PackedState.toState(packed, ps));
+			assertEquals(packed, PackedState.pack(PackedState.toState(packed, ps), ps));
+		}
+	}
+
+	@Test
+	public void transitionsMatchSimulatorState() throws IOException {
+		ProblemSpec ps = new ProblemSpec(INPUT);
+		Random random = new Random(3);
+		for(int i = 0; i < 10000; i++) {
+			State state = randomState(ps, random);
+			long packed = PackedState.pack(state, ps);
+			int move = ProblemSpec.CAR_MIN_MOVE + random.nextInt(ProblemSpec.CAR_MAX_MOVE - ProblemSpec.CAR_MIN_MOVE + 1);
+			assertSameState(state.changePosition(move, ps.getN()), PackedState.toState(PackedState.changePosition(packed, move, ps.getN()), ps));
+			int car = random.nextInt(ps.getCT());
+			assertSameState(state.changeCarType(ps.getCarOrder().get(car)), PackedState.toState(PackedState.changeCarType(packed, car), ps));
+			int driver = random.nextInt(ps.getDT());
+			assertSameState(state.changeDriver(ps.getDriverOrder().get(driver)), PackedState.toState(PackedState.changeDriver(packed, driver), ps));
+			Tire tire = Tire.values()[random.nextInt(ProblemSpec.NUM_TYRE_MODELS)];
+			assertSameState(state.changeTires(tire), PackedState.toState(PackedState.changeTires(packed, tire.ordinal()), ps));
+			int fuel = random.nextInt(ProblemSpec.FUEL_MAX + 1);
+			assertSameState(state.addFuel(fuel), PackedState.toState(PackedState.addFuel(packed, fuel), ps));
+			int consumed = random.nextInt(state.getFuel() + 1);
+			assertSameState(state.consumeFuel(consumed), PackedState.toState(PackedState.consumeFuel(packed, consumed), ps));
+			TirePressure pressure = TirePressure.values()[random.nextInt(ProblemSpec.TIRE_PRESSURE_LEVELS)];
+			assertSameState(state.changeTirePressure(pressure), PackedState.toState(PackedState.changeTirePressure(packed, pressure.ordinal()), ps));
+			assertSameState(state.changeCarAndDriver(ps.getCarOrder().get(car), ps.getDriverOrder().get(driver)),
+					PackedState.toState(PackedState.changeCarAndDriver(packed, car, driver), ps));
+		}
+	}
+
+	private static State randomState(ProblemSpec ps, Random random) {
+		return new State(1 + random.nextInt(ps.getN()), random.nextBoolean(), random.nextBoolean(),
+				ps.getCarOrder().get(random.nextInt(ps.getCT())), random.nextInt(ProblemSpec.FUEL_MAX + 1),
+				TirePressure.values()[random.nextInt(ProblemSpec.TIRE_PRESSURE_LEVELS)],
+				ps.getDriverOrder().get(random.nextInt(ps.getDT())), Tire.values()[random.nextInt(ProblemSpec.NUM_TYRE_MODELS)]);
+	}
+
+	//State HAS NO equals, SO THE FIELDS ARE COMPARED ONE BY ONE
+	private static void assertSameState(State expected, State actual) {
+		assertEquals(expected.getPos(), actual.getPos());
+		assertEquals(expected.isInSlipCondition(), actual.isInSlipCondition());
+		assertEquals(expected.isInBreakdownCondition(), actual.isInBreakdownCondition());
+		assertEquals(expected.getCarType(), actual.getCarType());
+		assertEquals(expected.getFuel(), actual.getFuel());
+		assertEquals(expected.getTirePressure(), actual.getTirePressure());
+		assertEquals(expected.getDriver(), actual.getDriver());
+		assertEquals(expected.getTireModel(), actual.getTireModel());
+	}
+
+}
@@ -0,0 +1,76 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * The values of PolicyIteration and the Q-values of TransitionModel against Q-values worked out
+ * directly from OwnSimulator. The solved values have to satisfy the Bellman optimality equation.
+ */
+public class PolicyIterationTest {
+
+	private static final double DELTA = 1e-6;
+
+	@Test
+	public void level1SatisfiesBellmanOptimality() throws IOException {
+		assertBellmanOptimal("examples/level_1/input_lvl1.txt");
+	}
+
+	//ON LEVEL 1 ALWAYS MOVING IS ALREADY OPTIMAL, LEVEL 2 MAKES THE POLICY CHANGE
+	@Test
+	public void level2SatisfiesBellmanOptimality() throws IOException {
+		assertBellmanOptimal("examples/level_2/input_lvl2.txt");
+	}
+
+	private static void assertBellmanOptimal(String input) throws IOException {
+		ProblemSpec ps = new ProblemSpec(input);
+		MDPSolver mdp = new MDPSolver(ps, null);
+		ActionSpace actionSpace = mdp.getActionSpace();
+		OwnSimulator ownSim = new OwnSimulator(ps, mdp);
+		State startState = State.getStartState(ps.getFirstCarType(), ps.getFirstDriver(), ps.getFirstTireModel());
+		PolicyIteration policyIteration = new PolicyIteration(ps, actionSpace, ownSim, startState, false);
+
+		StateIndexer indexer = new StateIndexer(ps);
+		double discount = ps.getDiscountFactor();
+		TransitionModel model = new TransitionModel(ps, actionSpace, ownSim, indexer, discount);
+		double[] values = new double[indexer.getNumberOfStates()];
+		for(int s = 0; s < values.length; s++) {
+			values[s] = ownSim.isGoalState(indexer.getState(s)) ? 0 : policyIteration.getValue(indexer.getState(s));
+		}
+
+		long[] nextStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int[] durations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		for(int s = 0; s < values.length; s++) {
+			long state = indexer.getState(s);
+			if(ownSim.isGoalState(state)) {
+				continue;
+			}
+			double best = 0;
+			for(int a = 0; a < actionSpace.size(); a++) {
+				double q = 0;
+				if(a == ActionSpace.MOVE) {
+					int outcomes = ownSim.getMoveOutcomes(state, nextStates, probabilities, durations);
+					for(int k = 0; k < outcomes; k++) {
+						double next = ownSim.isGoalState(nextStates[k]) ? TransitionModel.GOAL_REWARD : values[indexer.getIndex(nextStates[k])];
+						q += probabilities[k] * Math.pow(discount, durations[k]) * next;
+					}
+				}
+				else {
+					long next = ownSim.step(actionSpace.get(a), state);
+					q = Math.pow(discount, ownSim.getDuration(actionSpace.get(a))) * values[indexer.getIndex(next)];
+				}
+				assertEquals(input + " state " + s + " action " + a, q, model.getQValue(s, a, values), DELTA);
+				best = Math.max(best, q);
+			}
+			assertEquals(input + " state " + s, best, values[s], DELTA);
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+
+/**
+ * The table of preferred actions against the scan it is built with, run on the state itself
+ */
+public class RolloutPolicyTest {
+
+	private static final int STATES = 2000;
+
+	@Test
+	public void level1MatchesTheScan() throws IOException {
+		assertMatchesScan("input_lvl1.txt");
+	}
+
+	@Test
+	public void level2MatchesTheScan() throws IOException {
+		assertMatchesScan("input_lvl2.txt");
+	}
+
+	@Test
+	public void level3MatchesTheScan() throws IOException {
+		assertMatchesScan("input_lvl3.txt");
+	}
+
+	@Test
+	public void level4MatchesTheScan() throws IOException {
+		assertMatchesScan("input_lvl4.txt");
+	}
+
+	//EVERY PREVIOUS ACTION, NONE INCLUDED, ON RANDOM STATES WITH ANY FUEL, WHICH THE TABLE DOES NOT LOOK AT
+	private static void assertMatchesScan(String input) throws IOException {
+		ProblemSpec ps = new ProblemSpec(input);
+		MDPSolver mdp = new MDPSolver(ps, null);
+		ActionSpace actionSpace = mdp.getActionSpace();
+		RolloutPolicy policy = new RolloutPolicy(ps, actionSpace, new OwnSimulator(ps, mdp));
+		Random random = new Random(5);
+		for(int i = 0; i < STATES; i++) {
+			long state = PackedState.pack(1 + random.nextInt(ps.getN() - 1), false, false, random.nextInt(ps.getCT()),
+					random.nextInt(ProblemSpec.FUEL_MAX + 1), random.nextInt(ProblemSpec.TIRE_PRESSURE_LEVELS),
+					random.nextInt(ps.getDT()), random.nextInt(ProblemSpec.NUM_TYRE_MODELS));
+			double sum = policy.calculateProbMove(state);
+			for(int previous = -1; previous < actionSpace.size(); previous++) {
+				int expected = (sum > 0.5) ? ActionSpace.MOVE : policy.calculatePreferredAction(state, previous, sum);
+				assertEquals(input + " state " + state + " previous " + previous, expected, policy.rolloutHeuristic(state, previous));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ProblemSpec;
+
+/**
+ * The exact values of RolloutValues against the mean reward of sampled rollouts of the same policy. On
+ * levels 1 to 3 the policy never reaches the goal and every value is 0, so they are checked on level 4,
+ * where most states get a reward, including states where the best action is blocked by the previous one.
+ */
+public class RolloutValuesTest {
+
+	private static final int STATES = 100;
+	private static final int ROLLOUTS = 400;
+	private static final double SIGMAS = 5;
+	private static final double FLOAT_DELTA = 1e-3;
+	private static final double MAX_REWARD = 100;
+
+	@Test
+	public void level4MatchesSampledRollouts() throws IOException {
+		assertMatchesSampledRollouts("input_lvl4.txt");
+	}
+
+	//RANDOM STATES AT THE START, HALFWAY AND JUST BEFORE maxT, AFTER NO ACTION AND AFTER THE ACTION THE POLICY LIKES BEST
+	private static void assertMatchesSampledRollouts(String input) throws IOException {
+		ProblemSpec ps = new ProblemSpec(input);
+		MDPSolver mdp = new MDPSolver(ps, null);
+		ActionSpace actionSpace = mdp.getActionSpace();
+		OwnSimulator ownSim = new OwnSimulator(ps, mdp, new Random(11));
+		RolloutPolicy policy = new RolloutPolicy(ps, actionSpace, ownSim);
+		RolloutValues values = new RolloutValues(ps, actionSpace, ownSim, policy);
+		values.solve();
+
+		StateIndexer indexer = new StateIndexer(ps);
+		Random random = new Random(3);
+		int[] times = { 0, ps.getMaxT() / 2, ps.getMaxT() - 2 };
+		int rewarded = 0;
+		for(int i = 0; i < STATES; i++) {
+			int s = random.nextInt(indexer.getNumberOfStates());
+			long state = indexer.getState(s);
+			if(ownSim.isGoalState(state)) {
+				continue;
+			}
+			int[] previousActions = { -1, policy.rolloutHeuristic(state, -1) };
+			for(int t : times) {
+				for(int previous : previousActions) {
+					double exact = values.getValue(state, t, previous);
+					double sum = 0;
+					double squares = 0;
+					for(int r = 0; r < ROLLOUTS; r++) {
+						double reward = policy.simulate(state, t, (previous < 0) ? null : actionSpace.get(previous), null);
+						sum += reward;
+						squares += reward * reward;
+					}
+					double mean = sum / ROLLOUTS;
+					//A REWARD IS AT MOST MAX_REWARD, SO ITS VARIANCE IS AT MOST MAX_REWARD TIMES ITS MEAN, WHICH COVERS RARE REWARDS NONE OF THE SAMPLES GOT
+					double variance = Math.max(squares / ROLLOUTS - mean * mean, MAX_REWARD * exact);
+					double error = Math.sqrt(variance / ROLLOUTS);
+					assertEquals(input + " state " + s + " time " + t + " previous " + previous, mean, exact, SIGMAS * error + FLOAT_DELTA);
+					if(exact > 0) {
+						rewarded++;
+					}
+				}
+			}
+		}
+		assertTrue(input + " has no state the rollouts get a reward from", rewarded > 0);
+	}
+
+}
@@ -0,0 +1,126 @@
+package mdp_solver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import problem.Action;
+import problem.ProblemSpec;
+import simulator.State;
+
+/**
+ * The values of ValueIteration against a plain memoized recursion over (time, state) on level 1
+ */
+public class ValueIterationTest {
+
+	private static final double DELTA = 1e-9;
+
+	private ProblemSpec ps;
+	private List<Action> actionSpace;
+	private OwnSimulator ownSim;
+	private List<Map<Long, Double>> memo;
+
+	@Test
+	public void valuesMatchTheRecursion() throws IOException {
+		assertValuesMatchTheRecursion("examples/level_1/input_lvl1.txt");
+	}
+
+	//A SLIP OR A BREAKDOWN THAT TAKES NO TIME USED TO LOOK UP THE VALUES OF A LATER TIME THAT WAS NEVER SET
+	@Test
+	public void zeroRecoveryAndRepairTimeTakeOneStep() throws IOException {
+		List<String> lines = Files.readAllLines(Paths.get("examples/level_1/input_lvl1.txt"), StandardCharsets.UTF_8);
+		lines.set(1, "0.95 0 0");
+		File input = File.createTempFile("level1", ".txt");
+		input.deleteOnExit();
+		Files.write(input.toPath(), lines, StandardCharsets.UTF_8);
+		assertValuesMatchTheRecursion(input.getPath());
+
+		long[] nextStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int[] durations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		StateIndexer indexer = new StateIndexer(ps);
+		int outcomes = ownSim.getMoveOutcomes(indexer.getState(0), nextStates, probabilities, durations);
+		for(int k = 0; k < outcomes; k++) {
+			assertEquals(1, durations[k]);
+		}
+	}
+
+	private void assertValuesMatchTheRecursion(String inputFile) throws IOException {
+		ps = new ProblemSpec(inputFile);
+		MDPSolver mdp = new MDPSolver(ps, null);
+		actionSpace = mdp.getActionSpace();
+		ownSim = new OwnSimulator(ps, mdp);
+		State startState = State.getStartState(ps.getFirstCarType(), ps.getFirstDriver(), ps.getFirstTireModel());
+		ValueIteration valueIteration = new ValueIteration(ps, actionSpace, ownSim, startState, false);
+		newMemo();
+
+		StateIndexer indexer = new StateIndexer(ps);
+		for(int s = 0; s < indexer.getNumberOfStates(); s++) {
+			long state = indexer.getState(s);
+			if(!ownSim.isGoalState(state)) {
+				assertEquals("state " + s, value(0, state), valueIteration.getValue(state), DELTA);
+			}
+		}
+
+		//THE ACTION THE PLANNER PICKS IS ONE OF THE BEST
+		long start = PackedState.pack(startState, ps);
+		Action chosen = valueIteration.nextAction();
+		assertEquals(value(0, start), qValue(0, start, mdp.getActionSpace().getIndex(chosen)), DELTA);
+	}
+
+	private void newMemo() {
+		memo = new ArrayList<>(ps.getMaxT() + 1);
+		for(int t = 0; t <= ps.getMaxT(); t++) {
+			memo.add(new HashMap<>());
+		}
+	}
+
+	//V(t, s) FOR A STATE THAT IS NOT THE GOAL
+	private double value(int t, long state) {
+		Double known = memo.get(t).get(state);
+		if(known != null) {
+			return known;
+		}
+		double best = 0;
+		for(int a = 0; a < actionSpace.size(); a++) {
+			best = Math.max(best, qValue(t, state, a));
+		}
+		memo.get(t).put(state, best);
+		return best;
+	}
+
+	private double qValue(int t, long state, int a) {
+		if(a > 0) {
+			return reward(t + ownSim.getDuration(actionSpace.get(a)), ownSim.step(actionSpace.get(a), state));
+		}
+		long[] nextStates = new long[ProblemSpec.CAR_MOVE_RANGE];
+		double[] probabilities = new double[ProblemSpec.CAR_MOVE_RANGE];
+		int[] durations = new int[ProblemSpec.CAR_MOVE_RANGE];
+		int outcomes = ownSim.getMoveOutcomes(state, nextStates, probabilities, durations);
+		double q = 0;
+		for(int k = 0; k < outcomes; k++) {
+			if(probabilities[k] > 0) {
+				q += probabilities[k] * reward(t + durations[k], nextStates[k]);
+			}
+		}
+		return q;
+	}
+
+	private double reward(int t, long state) {
+		if(t > ps.getMaxT()) {
+			return 0;
+		}
+		return ownSim.isGoalState(state) ? 100.0 / t : value(t, state);
+	}
+
+}